@@ -0,0 +1,79 @@
+package org.atmo.atmo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * isFavorite/addFavorite przy 10-10k ulubionych. Zapis na dysk jest odroczony poza czas pomiaru.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FavoritesBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int size;
+
+    private Path dir;
+    private FavoritesManager manager;
+    private String present;
+    private String absent;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("atmo-favorites-bench");
+        manager = new FavoritesManager(dir.resolve("favorites.json"), Duration.ofHours(1));
+        for (int i = 0; i < size; i++) manager.addFavorite("Miasto " + i);
+        present = "MIASTO " + (size / 2);
+        absent = "Nieistniejące miasto";
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        manager.close();
+        try (var files = Files.list(dir)) {
+            for (Path p : files.toList()) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public boolean isFavoriteHit() {
+        return manager.isFavorite(present);
+    }
+
+    @Benchmark
+    public boolean isFavoriteMiss() {
+        return manager.isFavorite(absent);
+    }
+
+    // Dodanie i usunięcie, żeby rozmiar zbioru nie rósł w trakcie pomiaru
+    @Benchmark
+    public boolean addAndRemoveFavorite() {
+        String city = "Nowe " + (counter++ & 1023);
+        manager.addFavorite(city);
+        manager.removeFavorite(city);
+        return manager.isFavorite(city);
+    }
+}
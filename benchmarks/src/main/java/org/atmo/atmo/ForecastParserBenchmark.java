@@ -0,0 +1,68 @@
+package org.atmo.atmo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsowanie nagranej odpowiedzi Open-Meteo (pojedyncza lokalizacja i paczka),
+ * czyli to, co robi getWeatherData po odebraniu ciała odpowiedzi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ForecastParserBenchmark {
+
+    static final String FIXTURE = "forecast-szczecin.json";
+
+    @Param({"1", "50"})
+    int locations;
+
+    private byte[] body;
+    private List<String> names;
+
+    @Setup
+    public void setUp() throws IOException {
+        String single = new String(readFixture(), StandardCharsets.UTF_8);
+        names = new ArrayList<>(locations);
+        StringBuilder sb = new StringBuilder(locations == 1 ? "" : "[");
+        for (int i = 0; i < locations; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(single);
+            names.add("Miasto " + i);
+        }
+        if (locations > 1) sb.append(']');
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<WeatherService.WeatherData> parse() throws IOException {
+        return ForecastParser.parseBatch(new ByteArrayInputStream(body), names);
+    }
+
+    static byte[] readFixture() throws IOException {
+        try (InputStream in = Objects.requireNonNull(ForecastParserBenchmark.class.getResourceAsStream(FIXTURE))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.atmo.atmo;
+
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.layout.HBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Koszt budowania kafelków prognozy od zera (jak dawne createForecastTile przy każdym updateUI)
+ * w porównaniu z aktualizacją istniejących kafelków, oraz całe przejście updateUI (etykiety, wykres
+ * z rysowaniem Canvas, kafelki dni) na wątku FX. Węzły nie są podpięte do sceny,
+ * więc mierzymy tworzenie i ustawianie właściwości bez CSS i layoutu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ForecastTileBenchmark {
+
+    private static final int ICON_SIZE = 40;
+
+    private WeatherService.WeatherData data;
+    private List<ForecastTile> pool;
+    private long now;
+    private int shift;
+
+    private final Label cityName = new Label();
+    private final Label temperature = new Label();
+    private final Label description = new Label();
+    private final Label highLow = new Label();
+    private final HBox dailyContainer = new HBox();
+    private ForecastChart chart;
+
+    @Setup
+    public void setUp() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException alreadyStarted) {
+            started.countDown();
+        }
+        started.await();
+
+        data = ForecastParser.parse(new ByteArrayInputStream(ForecastParserBenchmark.readFixture()), "Szczecin");
+        now = data.hourly().time(0);
+        IconCache.getInstance().preload(ICON_SIZE);
+
+        pool = new ArrayList<>();
+        for (int i = 0; i < WeatherService.WeatherData.HOURLY_WINDOW + WeatherService.WeatherData.DAILY_WINDOW; i++) {
+            pool.add(new ForecastTile(ICON_SIZE));
+        }
+
+        CountDownLatch laidOut = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            chart = new ForecastChart();
+            chart.resize(450, 220);
+            chart.layout();
+            laidOut.countDown();
+        });
+        laidOut.await();
+    }
+
+    @Benchmark
+    public void buildTiles(Blackhole bh) {
+        for (WeatherService.HourlyForecast h : data.hourlyForecasts(now)) {
+            ForecastTile tile = new ForecastTile(ICON_SIZE);
+            tile.update(h.time(), icon(h.condition()), String.format("%.0f°", h.temp()));
+            bh.consume(tile);
+        }
+        for (WeatherService.DailyForecast d : data.dailyForecasts(now)) {
+            ForecastTile tile = new ForecastTile(ICON_SIZE);
+            tile.update(d.day(), icon(d.condition()), String.format("%.0f°", d.maxTemp()));
+            bh.consume(tile);
+        }
+    }
+
+    // Okno przesuwa się o godzinę, więc część kafelków dostaje nowe wartości
+    @Benchmark
+    public int recycleTiles() {
+        long at = now + (shift++ & 7) * 3600L;
+        int changed = 0;
+        int i = 0;
+        for (WeatherService.HourlyForecast h : data.hourlyForecasts(at)) {
+            if (pool.get(i++).update(h.time(), icon(h.condition()), String.format("%.0f°", h.temp()))) changed++;
+        }
+        for (WeatherService.DailyForecast d : data.dailyForecasts(at)) {
+            if (pool.get(i++).update(d.day(), icon(d.condition()), String.format("%.0f°", d.maxTemp()))) changed++;
+        }
+        return changed;
+    }
+
+    // Całe updateUI; wykres odkłada rysowanie na kolejne zdarzenie FX, więc czekamy także na nie.
+    // Koszt samego przekazania zadania na wątek FX i z powrotem mierzy fxRoundTrip
+    @Benchmark
+    public int renderPass() throws InterruptedException {
+        long at = now + (shift++ & 7) * 3600L;
+        int[] changed = new int[1];
+        CountDownLatch drawn = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            changed[0] = HelloController.render(data, at, cityName, temperature, description, highLow, chart, dailyContainer);
+            Platform.runLater(drawn::countDown);
+        });
+        drawn.await();
+        return changed[0];
+    }
+
+    @Benchmark
+    public void fxRoundTrip() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> Platform.runLater(done::countDown));
+        done.await();
+    }
+
+    private static Image icon(WeatherCondition condition) {
+        return IconCache.getInstance().get(condition.getIconFileName(), ICON_SIZE);
+    }
+}
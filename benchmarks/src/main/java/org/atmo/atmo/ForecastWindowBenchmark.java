@@ -0,0 +1,63 @@
+package org.atmo.atmo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wyznaczanie bieżącej godziny i okna prognozy (dawniej findCurrentHourIndex)
+ * oraz mapowanie kodów WMO na WeatherCondition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ForecastWindowBenchmark {
+
+    private static final int[] CODES = {0, 1, 2, 3, 45, 48, 51, 53, 55, 61, 63, 65, 71, 73, 75, 80, 85, 95, 99, 7};
+
+    private WeatherService.WeatherData data;
+    private long now;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = ForecastParser.parse(new ByteArrayInputStream(ForecastParserBenchmark.readFixture()), "Szczecin");
+        // Środek serii, żeby wyszukiwanie nie kończyło się na pierwszym elemencie
+        now = data.hourly().time(data.hourly().size() / 2) - 900;
+    }
+
+    @Benchmark
+    public int currentHourIndex() {
+        return data.hourly().indexAtOrAfter(now);
+    }
+
+    @Benchmark
+    public ForecastSeries hourlyWindow() {
+        return data.hourlyWindow(now);
+    }
+
+    @Benchmark
+    public List<WeatherService.HourlyForecast> hourlyForecasts() {
+        return data.hourlyForecasts(now);
+    }
+
+    @Benchmark
+    public void weatherConditionFromCode(Blackhole bh) {
+        for (int code : CODES) bh.consume(WeatherCondition.fromCode(code));
+    }
+}
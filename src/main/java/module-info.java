@@ -8,6 +8,8 @@ module org.atmo.atmo {
     requires org.kordamp.bootstrapfx.core;
     requires eu.hansolo.tilesfx;
     requires java.net.http;
+    requires jdk.httpserver;
+    requires jdk.jfr;
     requires org.json;
     requires org.testng;
 
@@ -0,0 +1,87 @@
+package org.atmo.atmo;
+
+import javafx.scene.image.Image;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tła motywów dekodowane w tle od razu do szerokości okna (w pikselach ekranu), zamiast pełnych JPEG-ów.
+ * Cache LRU ograniczony łączną liczbą bajtów pikseli.
+ */
+public class BackgroundCache {
+
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+    private static BackgroundCache instance;
+
+    private record Key(String fileName, int width) {}
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Image> images = new LinkedHashMap<>(8, 0.75f, true);
+
+    BackgroundCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized BackgroundCache getInstance() {
+        if (instance == null) instance = new BackgroundCache(MAX_BYTES);
+        return instance;
+    }
+
+    /**
+     * Obraz o szerokości {@code width} pikseli z zachowaniem proporcji; dekodowanie trwa w tle,
+     * więc wynik może być jeszcze niegotowy (patrz {@link Image#progressProperty()}). Null, gdy brak pliku.
+     */
+    public synchronized Image get(String fileName, int width) {
+        Key key = new Key(fileName, width);
+        Image image = images.get(key);
+        if (image != null) return image;
+
+        URL url = BackgroundCache.class.getResource(fileName);
+        if (url == null) {
+            System.err.println("Nie udało się załadować tła: " + fileName);
+            return null;
+        }
+        image = new Image(url.toExternalForm(), width, 0, true, true, true);
+        images.put(key, image);
+        evict(key);
+        return image;
+    }
+
+    /** Zleca dekodowanie z wyprzedzeniem, np. następnego motywu. */
+    public void preload(String fileName, int width) {
+        get(fileName, width);
+    }
+
+    public synchronized long bytes() {
+        long total = 0;
+        for (Map.Entry<Key, Image> e : images.entrySet()) total += bytes(e.getKey(), e.getValue());
+        return total;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    // Najdawniej używane wypadają pierwsze; właśnie dodany obraz zostaje nawet ponad limit
+    private void evict(Key keep) {
+        long total = bytes();
+        Iterator<Map.Entry<Key, Image>> it = images.entrySet().iterator();
+        while (total > maxBytes && it.hasNext()) {
+            Map.Entry<Key, Image> e = it.next();
+            if (e.getKey().equals(keep)) continue;
+            total -= bytes(e.getKey(), e.getValue());
+            it.remove();
+        }
+    }
+
+    // Przed zdekodowaniem wymiary są nieznane - zakładamy tło pionowe 9:16 jak w zasobach
+    private static long bytes(Key key, Image image) {
+        if (image.getWidth() > 0 && image.getHeight() > 0) {
+            return (long) image.getWidth() * (long) image.getHeight() * 4;
+        }
+        return (long) key.width() * (key.width() * 16L / 9) * 4;
+    }
+}
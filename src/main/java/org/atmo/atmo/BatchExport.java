@@ -0,0 +1,506 @@
+package org.atmo.atmo;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Eksport prognoz bez interfejsu graficznego (nie uruchamia JavaFX) - dla zadań nocnych.
+ * Wejście: jedna lokalizacja na linię, nazwa miasta albo "szerokość,długość[,nazwa]".
+ * Przerwany eksport uruchomiony ponownie z tymi samymi argumentami kontynuuje od miejsca przerwania.
+ * Plik postępu ma jedną linię na zapisaną paczkę: "offset indeks indeks ...", gdzie offset to długość
+ * wyjścia po tej paczce; przy wznowieniu wyjście jest ucinane do ostatniego zatwierdzonego offsetu.
+ *
+ * Użycie: BatchExport &lt;wejście.txt&gt; &lt;wyjście&gt; [--format csv|json|bin] [--parallelism N] [--batch-size N]
+ */
+public class BatchExport {
+
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final int BINARY_MAGIC = 0x4154464B; // "ATFK"
+    private static final int BINARY_VERSION = 1;
+
+    enum Format { CSV, JSON, BIN }
+
+    record Location(int index, String name, Double latitude, Double longitude) {}
+
+    private final WeatherService weatherService;
+    private final int parallelism;
+    private final int batchSize;
+    private final AtomicInteger exported = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<Long> batchLatenciesNanos = new ArrayList<>();
+
+    BatchExport(WeatherService weatherService, int parallelism, int batchSize) {
+        this.weatherService = weatherService;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Użycie: BatchExport <wejście.txt> <wyjście> [--format csv|json|bin] [--parallelism N] [--batch-size N]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Format format = formatFromName(output);
+        int parallelism = DEFAULT_PARALLELISM;
+        int batchSize = WeatherService.BATCH_SIZE;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--format" -> format = Format.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                case "--parallelism" -> parallelism = Integer.parseInt(args[i + 1]);
+                case "--batch-size" -> batchSize = Integer.parseInt(args[i + 1]);
+                default -> {
+                    System.err.println("Nieznana opcja: " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        // Bez cache na dysku i bez progu świeżości - eksport zawsze pobiera aktualne dane
+        ForecastCache cache = new ForecastCache(parallelism * batchSize, Duration.ZERO, Duration.ZERO, null);
+        WeatherService service = new WeatherService(cache, Gazetteer.loadDefault());
+        new BatchExport(service, parallelism, batchSize).run(readLocations(input), output, format);
+    }
+
+    void run(List<Location> locations, Path output, Format format) throws IOException, InterruptedException {
+        Path progressFile = output.resolveSibling(output.getFileName() + ".progress");
+        BitSet done = new BitSet();
+        long committed = readProgress(progressFile, done);
+        boolean resuming = !done.isEmpty() && Files.exists(output) && Files.size(output) >= committed;
+        if (!done.isEmpty() && !resuming) {
+            System.err.println("Plik wyjściowy nie zgadza się z zapisanym postępem - eksport od początku");
+        }
+        if (resuming) {
+            // Wiersze zapisane po ostatnim zatwierdzeniu (i urwana linia) zostaną zapisane ponownie
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                channel.truncate(committed);
+            }
+            // Plik postępu przepisujemy w całości - urwana ostatnia linia nie skleja się z kolejnymi
+            writeProgress(progressFile, committed, done);
+        } else {
+            done.clear();
+            committed = 0;
+        }
+
+        List<Location> pending = new ArrayList<>();
+        for (Location location : locations) {
+            if (!done.get(location.index())) pending.add(location);
+        }
+        if (resuming) {
+            System.out.println("Wznawiam eksport: " + (locations.size() - pending.size()) + " z " + locations.size() + " gotowe");
+        }
+
+        long start = System.nanoTime();
+        try (Sink sink = openSink(output, format, resuming, committed);
+             Writer progress = Files.newBufferedWriter(progressFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, resuming ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE);
+             ExecutorService lookups = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-geocode-", 0).factory());
+             ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-export-", 0).factory())) {
+
+            // Wątki wirtualne są tanie, ale liczbę równoległych żądań do API (geokodowanie i paczki prognoz)
+            // ograniczamy wspólnym semaforem; paczek w toku jest najwyżej tyle, ile zezwoleń
+            Semaphore permits = new Semaphore(parallelism);
+            Semaphore batches = new Semaphore(parallelism);
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                List<Location> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                batches.acquire();
+                executor.submit(() -> {
+                    try {
+                        exportBatch(batch, sink, progress, lookups, permits);
+                    } finally {
+                        batches.release();
+                    }
+                });
+            }
+        }
+
+        printSummary(pending.size(), System.nanoTime() - start);
+        if (failed.get() == 0) Files.deleteIfExists(progressFile);
+    }
+
+    // Każda lokalizacja paczki jest liczona dokładnie raz: jako wyeksportowana albo jako błąd
+    private void exportBatch(List<Location> batch, Sink sink, Writer progress, ExecutorService lookups, Semaphore permits) {
+        long start = System.nanoTime();
+        int failedHere = 0;
+        try {
+            // Geokodowanie całej paczki naraz, każde zapytanie pod tym samym semaforem co paczki prognoz
+            List<Future<WeatherService.Coordinates>> geocoding = new ArrayList<>(batch.size());
+            for (Location location : batch) geocoding.add(lookups.submit(() -> resolve(location, permits)));
+
+            List<WeatherService.Coordinates> coordinates = new ArrayList<>(batch.size());
+            List<Location> resolved = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                WeatherService.Coordinates coords = geocoding.get(i).get();
+                if (coords == null) {
+                    failed.incrementAndGet();
+                    failedHere++;
+                    System.err.println("Nie znaleziono: " + batch.get(i).name());
+                    continue;
+                }
+                coordinates.add(coords);
+                resolved.add(batch.get(i));
+            }
+
+            Map<WeatherService.Coordinates, WeatherService.WeatherData> results;
+            permits.acquire();
+            try {
+                results = weatherService.getWeatherDataBatch(coordinates, Duration.ZERO);
+            } finally {
+                permits.release();
+            }
+
+            int written = 0;
+            synchronized (sink) {
+                List<Integer> doneIndices = new ArrayList<>(resolved.size());
+                for (int i = 0; i < resolved.size(); i++) {
+                    WeatherService.WeatherData data = results.get(coordinates.get(i));
+                    if (data == null) {
+                        failed.incrementAndGet();
+                        failedHere++;
+                        continue;
+                    }
+                    sink.write(resolved.get(i).index(), coordinates.get(i), data);
+                    doneIndices.add(resolved.get(i).index());
+                }
+                sink.flush();
+                // Postęp dopiero po zapisaniu wyników, pod tą samą blokadą - offsety w pliku postępu rosną,
+                // a po awarii wszystko za ostatnim zatwierdzonym offsetem jest ucinane i powtarzane
+                if (!doneIndices.isEmpty()) {
+                    progress.write(progressLine(sink.position(), doneIndices));
+                    progress.flush();
+                }
+                written = doneIndices.size();
+            }
+            exported.addAndGet(written);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            failed.addAndGet(batch.size() - failedHere);
+            System.err.println("Paczka nie powiodła się: " + e.getMessage());
+        }
+        synchronized (batchLatenciesNanos) {
+            batchLatenciesNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private WeatherService.Coordinates resolve(Location location, Semaphore permits) throws InterruptedException {
+        if (location.latitude() != null) {
+            return new WeatherService.Coordinates(location.latitude(), location.longitude(), location.name());
+        }
+        permits.acquire();
+        try {
+            return weatherService.getCoordinatesForCity(location.name(), RequestScheduler.Priority.BACKGROUND);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Nie udało się ustalić położenia dla " + location.name() + ": " + e.getMessage());
+            return null;
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void printSummary(int attempted, long elapsedNanos) {
+        long[] latencies;
+        synchronized (batchLatenciesNanos) {
+            latencies = batchLatenciesNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "Wyeksportowano %d z %d lokalizacji (błędy: %d) w %.1f s - %.1f lokalizacji/s%n",
+                exported.get(), attempted, failed.get(), seconds, exported.get() / Math.max(seconds, 1e-9));
+        if (latencies.length > 0) {
+            System.out.printf(Locale.ROOT, "Czas paczki: p50 %.0f ms, p95 %.0f ms, max %.0f ms (%d paczek)%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.95) / 1e6,
+                    latencies[latencies.length - 1] / 1e6, latencies.length);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    static List<Location> readLocations(Path input) throws IOException {
+        List<Location> locations = new ArrayList<>();
+        int index = 0;
+        for (String line : Files.readAllLines(input, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            locations.add(parseLocation(index++, trimmed));
+        }
+        return locations;
+    }
+
+    static Location parseLocation(int index, String line) {
+        String[] parts = line.split(",", 3);
+        if (parts.length >= 2) {
+            try {
+                double latitude = Double.parseDouble(parts[0].trim());
+                double longitude = Double.parseDouble(parts[1].trim());
+                String name = parts.length == 3 ? parts[2].trim() : parts[0].trim() + "," + parts[1].trim();
+                return new Location(index, name, latitude, longitude);
+            } catch (NumberFormatException e) {
+                // To jednak nazwa miasta z przecinkiem
+            }
+        }
+        return new Location(index, line, null, null);
+    }
+
+    static String progressLine(long offset, List<Integer> indices) {
+        StringBuilder sb = new StringBuilder().append(offset);
+        for (int index : indices) sb.append(' ').append(index);
+        return sb.append('\n').toString();
+    }
+
+    // Zwraca ostatni zatwierdzony offset wyjścia; linia bez końcowego '\n' to urwany zapis i jest pomijana
+    private static long readProgress(Path progressFile, BitSet done) throws IOException {
+        if (!Files.exists(progressFile)) return 0;
+        String content = Files.readString(progressFile, StandardCharsets.UTF_8);
+        long committed = 0;
+        int lineStart = 0;
+        for (int end = content.indexOf('\n'); end >= 0; lineStart = end + 1, end = content.indexOf('\n', lineStart)) {
+            String line = content.substring(lineStart, end).trim();
+            if (line.isEmpty()) continue;
+            String[] parts = line.split(" ");
+            committed = Long.parseLong(parts[0]);
+            for (int i = 1; i < parts.length; i++) done.set(Integer.parseInt(parts[i]));
+        }
+        return committed;
+    }
+
+    private static void writeProgress(Path progressFile, long committed, BitSet done) throws IOException {
+        List<Integer> indices = new ArrayList<>(done.cardinality());
+        done.stream().forEach(indices::add);
+        Path tmp = Files.createTempFile(progressFile.toAbsolutePath().getParent(), progressFile.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tmp, progressLine(committed, indices), StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, progressFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Format formatFromName(Path output) {
+        String name = output.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".json") || name.endsWith(".jsonl")) return Format.JSON;
+        if (name.endsWith(".bin")) return Format.BIN;
+        return Format.CSV;
+    }
+
+    private static Sink openSink(Path output, Format format, boolean append, long position) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(Files.newOutputStream(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING), position);
+        return switch (format) {
+            case CSV -> new CsvSink(out, append);
+            case JSON -> new JsonSink(out);
+            case BIN -> new BinarySink(out, append);
+        };
+    }
+
+    private interface Sink extends Closeable {
+        void write(int index, WeatherService.Coordinates coords, WeatherService.WeatherData data) throws IOException;
+
+        void flush() throws IOException;
+
+        /** Długość pliku wyjściowego po ostatnim flush(). */
+        long position();
+    }
+
+    // Liczy bajty, które faktycznie doszły do pliku (bufory sinków są nad nim)
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long position;
+
+        CountingOutputStream(OutputStream out, long position) {
+            super(out);
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        long position() { return position; }
+    }
+
+    // Format "długi": jeden wiersz na godzinę prognozy
+    private static final class CsvSink implements Sink {
+        private final CountingOutputStream stream;
+        private final Writer out;
+
+        CsvSink(CountingOutputStream stream, boolean append) throws IOException {
+            this.stream = stream;
+            out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+            if (!append) out.write("index,location,latitude,longitude,time,temperature,precipitation,wind_speed,weather_code\n");
+        }
+
+        @Override
+        public void write(int index, WeatherService.Coordinates coords, WeatherService.WeatherData data) throws IOException {
+            String prefix = index + "," + quote(coords.locationName()) + "," + coords.latitude() + "," + coords.longitude() + ",";
+            ForecastSeries hourly = data.hourly();
+            for (int i = 0; i < hourly.size(); i++) {
+                out.write(prefix);
+                out.write(Long.toString(hourly.time(i)));
+                out.write(',');
+                out.write(Float.toString(hourly.temperature(i)));
+                out.write(',');
+                out.write(number(hourly.precipitation(i)));
+                out.write(',');
+                out.write(number(hourly.windSpeed(i)));
+                out.write(',');
+                out.write(Integer.toString(hourly.weatherCode(i)));
+                out.write('\n');
+            }
+        }
+
+        private static String quote(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override public void flush() throws IOException { out.flush(); }
+        @Override public long position() { return stream.position(); }
+        @Override public void close() throws IOException { out.close(); }
+    }
+
+    // JSON Lines - jeden obiekt na lokalizację, więc plik można dopisywać przy wznowieniu
+    private static final class JsonSink implements Sink {
+        private final CountingOutputStream stream;
+        private final Writer out;
+
+        JsonSink(CountingOutputStream stream) {
+            this.stream = stream;
+            out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        public void write(int index, WeatherService.Coordinates coords, WeatherService.WeatherData data) throws IOException {
+            StringBuilder sb = new StringBuilder(4096);
+            sb.append("{\"index\":").append(index)
+                    .append(",\"location\":\"").append(escapeJson(coords.locationName()))
+                    .append("\",\"latitude\":").append(coords.latitude())
+                    .append(",\"longitude\":").append(coords.longitude())
+                    .append(",\"current_temperature\":").append(jsonNumber(data.currentTemp()))
+                    .append(",\"hourly\":");
+            appendSeries(sb, data.hourly());
+            sb.append(",\"daily\":");
+            appendSeries(sb, data.daily());
+            sb.append("}\n");
+            out.write(sb.toString());
+        }
+
+        private static void appendSeries(StringBuilder sb, ForecastSeries series) {
+            sb.append("{\"time\":[");
+            for (int i = 0; i < series.size(); i++) sb.append(i > 0 ? "," : "").append(series.time(i));
+            sb.append("],\"temperature\":[");
+            for (int i = 0; i < series.size(); i++) sb.append(i > 0 ? "," : "").append(jsonNumber(series.temperature(i)));
+            sb.append("],\"precipitation\":[");
+            for (int i = 0; i < series.size(); i++) sb.append(i > 0 ? "," : "").append(jsonNumber(series.precipitation(i)));
+            sb.append("],\"weather_code\":[");
+            for (int i = 0; i < series.size(); i++) sb.append(i > 0 ? "," : "").append(series.weatherCode(i));
+            sb.append("]}");
+        }
+
+        private static String jsonNumber(double value) {
+            return Double.isNaN(value) ? "null" : Float.toString((float) value);
+        }
+
+        @Override public void flush() throws IOException { out.flush(); }
+        @Override public long position() { return stream.position(); }
+        @Override public void close() throws IOException { out.close(); }
+    }
+
+    // Nagłówek, potem rekordy: indeks, nazwa, współrzędne i obie serie w formacie ForecastSeries.writeTo
+    private static final class BinarySink implements Sink {
+        private final CountingOutputStream stream;
+        private final DataOutputStream out;
+
+        BinarySink(CountingOutputStream stream, boolean append) throws IOException {
+            this.stream = stream;
+            out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            if (!append) {
+                out.writeInt(BINARY_MAGIC);
+                out.writeByte(BINARY_VERSION);
+            }
+        }
+
+        @Override
+        public void write(int index, WeatherService.Coordinates coords, WeatherService.WeatherData data) throws IOException {
+            out.writeInt(index);
+            out.writeUTF(coords.locationName());
+            out.writeDouble(coords.latitude());
+            out.writeDouble(coords.longitude());
+            out.writeDouble(data.currentTemp());
+            data.hourly().writeTo(out);
+            data.daily().writeTo(out);
+        }
+
+        @Override public void flush() throws IOException { out.flush(); }
+        @Override public long position() { return stream.position(); }
+        @Override public void close() throws IOException { out.close(); }
+    }
+
+    // Łańcuch JSON: poza cudzysłowem i ukośnikiem escapujemy wszystkie znaki sterujące (< 0x20)
+    static String escapeJson(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "" : Float.toString((float) value);
+    }
+}
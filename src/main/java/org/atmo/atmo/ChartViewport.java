@@ -0,0 +1,95 @@
+package org.atmo.atmo;
+
+/**
+ * Widoczny fragment wykresu w jednostkach indeksów serii: pierwszy punkt ({@code start})
+ * i liczba punktów mieszczących się na szerokości ({@code span}). Przesuwanie i powiększanie
+ * nigdy nie wychodzi poza serię, a powiększenie trzyma w miejscu punkt pod kursorem.
+ */
+public class ChartViewport {
+
+    public static final double MIN_SPAN = 6;
+
+    private final double defaultSpan;
+    private int count;
+    private double start;
+    private double span;
+
+    public ChartViewport(double defaultSpan) {
+        this.defaultSpan = defaultSpan;
+        this.span = defaultSpan;
+    }
+
+    public double start() { return start; }
+
+    public double span() { return span; }
+
+    public int count() { return count; }
+
+    public void setCount(int count) {
+        this.count = count;
+        clamp();
+    }
+
+    /** Domyślne powiększenie od podanego punktu. */
+    public void reset(int startIndex) {
+        span = defaultSpan;
+        start = startIndex;
+        clamp();
+    }
+
+    /** Zwraca true, jeśli widok faktycznie się przesunął. */
+    public boolean panBy(double points) {
+        return panTo(start + points);
+    }
+
+    public boolean panTo(double newStart) {
+        double before = start;
+        start = newStart;
+        clamp();
+        return start != before;
+    }
+
+    /**
+     * Powiększenie {@code factor} razy (powyżej 1 - mniej punktów na ekranie) wokół punktu
+     * leżącego w ułamku {@code anchor} szerokości (0 - lewa krawędź, 1 - prawa).
+     */
+    public boolean zoomAt(double factor, double anchor) {
+        double beforeStart = start;
+        double beforeSpan = span;
+        double anchorIndex = start + anchor * span;
+        span = Math.max(MIN_SPAN, Math.min(maxSpan(), span / factor));
+        start = anchorIndex - anchor * span;
+        clamp();
+        return start != beforeStart || span != beforeSpan;
+    }
+
+    public double pointWidth(double width) {
+        return width / span;
+    }
+
+    /** Środek kolumny punktu {@code index} w pikselach. */
+    public double x(double index, double width) {
+        return (index - start + 0.5) * pointWidth(width);
+    }
+
+    public double index(double x, double width) {
+        return x / pointWidth(width) + start - 0.5;
+    }
+
+    public int firstVisible() {
+        return Math.max(0, (int) Math.floor(start));
+    }
+
+    public int lastVisible() {
+        return Math.min(count - 1, (int) Math.ceil(start + span) - 1);
+    }
+
+    private double maxSpan() {
+        return Math.max(MIN_SPAN, count);
+    }
+
+    private void clamp() {
+        span = Math.max(MIN_SPAN, Math.min(maxSpan(), span));
+        start = Math.max(0, Math.min(start, count - span));
+    }
+}
@@ -0,0 +1,124 @@
+package org.atmo.atmo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ładuje prognozy dla wierszy widocznych w panelu porównania. Prośby z jednego przewinięcia
+ * zbieramy przez krótkie okno i wysyłamy jednym żądaniem zbiorczym, a wyniki oddajemy jedną paczką,
+ * więc widok przerysowuje wszystkie nowe wiersze w jednym przebiegu.
+ */
+public class DashboardLoader {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(30);
+
+    private final WeatherService weatherService;
+    private final Executor window;
+    private final Executor callbackExecutor;
+    private final Consumer<Map<String, WeatherService.WeatherData>> onLoaded;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dashboard-load-", 0).factory());
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private boolean flushScheduled;
+    private volatile boolean closed;
+
+    public DashboardLoader(WeatherService weatherService, Duration window, Executor callbackExecutor,
+                           Consumer<Map<String, WeatherService.WeatherData>> onLoaded) {
+        this.weatherService = weatherService;
+        this.window = CompletableFuture.delayedExecutor(window.toMillis(), TimeUnit.MILLISECONDS);
+        this.callbackExecutor = callbackExecutor;
+        this.onLoaded = onLoaded;
+    }
+
+    /** Dokłada miasto do najbliższej paczki; miasta już czekające albo w locie są pomijane. */
+    public synchronized void request(String city) {
+        if (closed || inFlight.contains(city) || !pending.add(city)) return;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            window.execute(this::flush);
+        }
+    }
+
+    /** Porzuca czekające prośby, np. gdy panel zostaje ukryty. */
+    public synchronized void clearPending() {
+        pending.clear();
+    }
+
+    public void close() {
+        closed = true;
+        clearPending();
+        executor.shutdownNow();
+    }
+
+    private void flush() {
+        List<String> cities;
+        synchronized (this) {
+            flushScheduled = false;
+            if (closed || pending.isEmpty()) return;
+            cities = new ArrayList<>(pending);
+            pending.clear();
+            inFlight.addAll(cities);
+        }
+        try {
+            executor.execute(() -> load(cities));
+        } catch (RejectedExecutionException e) {
+            // Panel został zamknięty
+        }
+    }
+
+    private void load(List<String> cities) {
+        Map<String, WeatherService.WeatherData> loaded = new LinkedHashMap<>();
+        try {
+            // Współrzędne są zwykle w pamięci albo w lokalnym indeksie; brakujące geokodujemy równolegle.
+            // Panel jest widoczny, ale ustępuje w kolejce głównemu wyszukiwaniu użytkownika
+            Map<String, CompletableFuture<WeatherService.Coordinates>> geocoding = new LinkedHashMap<>();
+            for (String city : cities) {
+                geocoding.put(city, weatherService.getCoordinatesForCityAsync(city, RequestScheduler.Priority.VISIBLE));
+            }
+            List<String> names = new ArrayList<>();
+            List<WeatherService.Coordinates> locations = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<WeatherService.Coordinates>> entry : geocoding.entrySet()) {
+                try {
+                    WeatherService.Coordinates coords = entry.getValue().get();
+                    if (coords == null) continue;
+                    names.add(entry.getKey());
+                    locations.add(coords);
+                } catch (ExecutionException e) {
+                    System.err.println("Nie udało się ustalić położenia dla " + entry.getKey() + ": " + e.getCause().getMessage());
+                }
+            }
+            if (locations.isEmpty()) return;
+
+            Map<WeatherService.Coordinates, WeatherService.WeatherData> results = weatherService.getWeatherDataBatch(
+                    locations, weatherService.getForecastCache().getFreshTtl(), RequestScheduler.Priority.VISIBLE);
+            for (int i = 0; i < names.size(); i++) {
+                WeatherService.WeatherData data = results.get(locations.get(i));
+                if (data != null) loaded.put(names.get(i), data.withCity(locations.get(i).locationName()));
+            }
+            Metrics.getInstance().increment("dashboard.batch");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            synchronized (this) {
+                inFlight.removeAll(cities);
+            }
+        }
+        if (!loaded.isEmpty() && !closed) callbackExecutor.execute(() -> onLoaded.accept(loaded));
+    }
+}
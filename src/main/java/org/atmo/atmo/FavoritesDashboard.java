@@ -0,0 +1,190 @@
+package org.atmo.atmo;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Porównanie ulubionych miast: wirtualizowana lista, w której komórki istnieją tylko dla widocznych
+ * wierszy, każdy z bieżącą pogodą i wykresem temperatury na najbliższe 24 h.
+ * Prognozy pobieramy i odświeżamy wyłącznie dla wierszy, które właśnie są na ekranie.
+ */
+public class FavoritesDashboard extends VBox {
+
+    private static final double ROW_HEIGHT = 56;
+    private static final int ICON_SIZE = 32;
+    private static final double SPARK_WIDTH = 110;
+    private static final double SPARK_HEIGHT = 32;
+    private static final Duration RETRY_AFTER = Duration.ofMinutes(1);
+    private static final Duration TICK = Duration.ofMinutes(1);
+
+    private record Row(WeatherService.WeatherData data, long loadedAtMillis) {}
+
+    private final ListView<String> list = new ListView<>();
+    private final DashboardLoader loader;
+    private final ScheduledExecutorService clock;
+    private final long staleAfterMillis;
+    // Stan wierszy trzymamy poza komórkami, bo komórki są przewijane i używane ponownie
+    private final Map<String, Row> rows = new HashMap<>();
+    private final Map<String, Long> requestedAt = new HashMap<>();
+    private Consumer<String> onOpen = city -> {};
+    private ScheduledFuture<?> ticker;
+
+    public FavoritesDashboard(WeatherService weatherService, ScheduledExecutorService clock) {
+        super(10);
+        getStyleClass().add("dashboard");
+        this.clock = clock;
+        this.staleAfterMillis = weatherService.getForecastCache().getFreshTtl().toMillis();
+        this.loader = new DashboardLoader(weatherService, DashboardLoader.DEFAULT_WINDOW, Platform::runLater, this::applyLoaded);
+
+        Label title = new Label("Porównanie ulubionych");
+        title.getStyleClass().add("module-title");
+        list.getStyleClass().add("dashboard-list");
+        // Stała wysokość wiersza: ListView nie musi mierzyć komórek przy przewijaniu
+        list.setFixedCellSize(ROW_HEIGHT);
+        list.setCellFactory(view -> new DashboardCell());
+        list.setPlaceholder(new Label("Brak ulubionych miast"));
+        VBox.setVgrow(list, Priority.ALWAYS);
+        getChildren().addAll(title, list);
+    }
+
+    public void setOnOpen(Consumer<String> onOpen) {
+        this.onOpen = onOpen;
+    }
+
+    public void setFavorites(List<String> favorites) {
+        if (!list.getItems().equals(favorites)) list.getItems().setAll(favorites);
+    }
+
+    /** Okresowo przerysowuje widoczne wiersze - nieaktualne same poproszą o nowe dane. */
+    public void start() {
+        if (ticker != null || clock.isShutdown()) return;
+        ticker = clock.scheduleAtFixedRate(() -> Platform.runLater(list::refresh),
+                TICK.toMillis(), TICK.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (ticker != null) ticker.cancel(false);
+        ticker = null;
+        loader.clearPending();
+    }
+
+    public void close() {
+        stop();
+        loader.close();
+    }
+
+    // Cała paczka w jednym zdarzeniu FX - widoczne wiersze przerysowują się w jednym pulsie
+    private void applyLoaded(Map<String, WeatherService.WeatherData> loaded) {
+        long now = System.currentTimeMillis();
+        loaded.forEach((city, data) -> rows.put(city, new Row(data, now)));
+        list.refresh();
+    }
+
+    private void ensureLoaded(String city) {
+        long now = System.currentTimeMillis();
+        Row row = rows.get(city);
+        if (row != null && now - row.loadedAtMillis() < staleAfterMillis) return;
+        // Miasto, dla którego nie udało się pobrać danych, nie wraca do kolejki przy każdym przewinięciu
+        Long requested = requestedAt.get(city);
+        if (requested != null && now - requested < RETRY_AFTER.toMillis()) return;
+        requestedAt.put(city, now);
+        loader.request(city);
+    }
+
+    private final class DashboardCell extends ListCell<String> {
+        private final Label nameLabel = new Label();
+        private final Label descriptionLabel = new Label();
+        private final Canvas sparkline = new Canvas(SPARK_WIDTH, SPARK_HEIGHT);
+        private final ImageView iconView = new ImageView();
+        private final Label tempLabel = new Label();
+        private final HBox root;
+        private final double[] xs = new double[WeatherService.WeatherData.HOURLY_WINDOW];
+        private final double[] ys = new double[WeatherService.WeatherData.HOURLY_WINDOW];
+        private ForecastSeries drawn;
+
+        DashboardCell() {
+            nameLabel.getStyleClass().add("dashboard-name");
+            descriptionLabel.getStyleClass().add("dashboard-description");
+            tempLabel.getStyleClass().add("dashboard-temp");
+            iconView.setFitWidth(ICON_SIZE);
+            iconView.setFitHeight(ICON_SIZE);
+            Pane spacer = new Pane();
+            HBox.setHgrow(spacer, Priority.ALWAYS);
+            root = new HBox(10, new VBox(2, nameLabel, descriptionLabel), spacer, sparkline, iconView, tempLabel);
+            root.getStyleClass().add("dashboard-row");
+            setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !isEmpty()) onOpen.accept(getItem());
+            });
+        }
+
+        @Override
+        protected void updateItem(String city, boolean empty) {
+            super.updateItem(city, empty);
+            if (empty || city == null) {
+                setGraphic(null);
+                return;
+            }
+            setGraphic(root);
+            ForecastTile.setText(nameLabel, city);
+
+            Row row = rows.get(city);
+            if (row == null) {
+                ForecastTile.setText(descriptionLabel, "Ładowanie…");
+                ForecastTile.setText(tempLabel, "--°");
+                iconView.setImage(null);
+                drawSparkline(ForecastSeries.EMPTY);
+            } else {
+                WeatherService.WeatherData data = row.data();
+                ForecastTile.setText(descriptionLabel, data.currentCondition().getDescription());
+                ForecastTile.setText(tempLabel, String.format("%.0f°", data.currentTemp()));
+                iconView.setImage(IconCache.getInstance().get(data.currentCondition().getIconFileName(), ICON_SIZE));
+                drawSparkline(data.hourlyWindow(Instant.now().getEpochSecond()));
+            }
+            ensureLoaded(city);
+        }
+
+        // Canvas przerysowujemy tylko, gdy komórka dostała inną serię niż ostatnio
+        private void drawSparkline(ForecastSeries series) {
+            if (series.equals(drawn)) return;
+            drawn = series;
+            GraphicsContext g = sparkline.getGraphicsContext2D();
+            g.clearRect(0, 0, SPARK_WIDTH, SPARK_HEIGHT);
+            int n = Math.min(series.size(), xs.length);
+            if (n < 2) return;
+
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                min = Math.min(min, series.temperature(i));
+                max = Math.max(max, series.temperature(i));
+            }
+            double range = Math.max(1, max - min);
+            for (int i = 0; i < n; i++) {
+                xs[i] = 1 + i * (SPARK_WIDTH - 2) / (n - 1);
+                ys[i] = SPARK_HEIGHT - 2 - (series.temperature(i) - min) / range * (SPARK_HEIGHT - 4);
+            }
+            g.setStroke(Color.WHITE);
+            g.setLineWidth(1.5);
+            g.strokePolyline(xs, ys, n);
+        }
+    }
+}
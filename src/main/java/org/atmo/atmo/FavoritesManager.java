@@ -2,18 +2,78 @@ package org.atmo.atmo;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import java.io.File;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class FavoritesManager {
+/**
+ * Ulubione miasta. Czytelnicy widzą niezmienną migawkę (copy-on-write), zapisujący podmieniają ją przez CAS.
+ * Plik jest zapisywany w tle, z opóźnieniem, przez plik tymczasowy i atomowe przeniesienie.
+ */
+public class FavoritesManager implements AutoCloseable {
     private static FavoritesManager instance;
     private static final String FILE_PATH = "favorites.json";
-    private final List<String> favorites = new ArrayList<>();
+    private static final Duration WRITE_DELAY = Duration.ofMillis(500);
+
+    // Lista w kolejności dodania + indeks znormalizowana nazwa -> nazwa z listy
+    private record Snapshot(List<String> favorites, Map<String, String> index) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), Map.of());
+
+        Snapshot with(String city) {
+            List<String> list = new ArrayList<>(favorites.size() + 1);
+            list.addAll(favorites);
+            list.add(city);
+            Map<String, String> map = new HashMap<>(index);
+            map.put(Gazetteer.normalize(city), city);
+            return new Snapshot(Collections.unmodifiableList(list), Collections.unmodifiableMap(map));
+        }
+
+        Snapshot without(String key) {
+            String existing = index.get(key);
+            List<String> list = new ArrayList<>(favorites);
+            list.remove(existing);
+            Map<String, String> map = new HashMap<>(index);
+            map.remove(key);
+            return new Snapshot(Collections.unmodifiableList(list), Collections.unmodifiableMap(map));
+        }
+    }
+
+    private final Path file;
+    private final Duration writeDelay;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "favorites-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private long writtenVersion;
 
-    private FavoritesManager() { loadFromFile(); }
+    private FavoritesManager() { this(Paths.get(FILE_PATH), WRITE_DELAY); }
+
+    FavoritesManager(Path file, Duration writeDelay) {
+        this.file = file;
+        this.writeDelay = writeDelay;
+        loadFromFile();
+    }
 
     public static synchronized FavoritesManager getInstance() {
         if (instance == null) instance = new FavoritesManager();
@@ -22,46 +82,113 @@ public class FavoritesManager {
 
     public void addFavorite(String city) {
         if (city == null || city.isBlank()) return;
-        if (!isFavorite(city)) {
-            favorites.add(city.trim());
-            saveToFile();
+        String trimmed = city.trim();
+        String key = Gazetteer.normalize(trimmed);
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.index().containsKey(key)) return;
+            if (snapshot.compareAndSet(current, current.with(trimmed))) break;
         }
+        changed();
     }
 
     public void removeFavorite(String city) {
-        favorites.removeIf(f -> f.equalsIgnoreCase(city.trim()));
-        saveToFile();
+        if (city == null) return;
+        String key = Gazetteer.normalize(city);
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (!current.index().containsKey(key)) return;
+            if (snapshot.compareAndSet(current, current.without(key))) break;
+        }
+        changed();
     }
 
     public boolean isFavorite(String city) {
         if (city == null) return false;
-        return favorites.stream().anyMatch(f -> f.equalsIgnoreCase(city.trim()));
+        return snapshot.get().index().containsKey(Gazetteer.normalize(city));
+    }
+
+    /** Niezmienna migawka - bez kopiowania, bezpieczna do iterowania z dowolnego wątku. */
+    public List<String> getFavorites() { return snapshot.get().favorites(); }
+
+    public void clearAll() {
+        if (snapshot.getAndSet(Snapshot.EMPTY).favorites().isEmpty()) return;
+        changed();
+    }
+
+    /** Zapisuje zaległe zmiany od razu i czeka na zakończenie zapisu (np. przy zamykaniu aplikacji). */
+    public void flush() {
+        if (writer.isShutdown()) return;
+        try {
+            writer.submit(this::saveToFile).get();
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    /** Zapisuje zaległe zmiany i zatrzymuje wątek zapisu; późniejsze zmiany zostają tylko w pamięci. */
+    @Override
+    public void close() {
+        flush();
+        // Odroczony zapis jest już zbędny - shutdown() czekałby na niego nawet godzinę
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    public List<String> getFavorites() { return new ArrayList<>(favorites); }
+    // Seria zmian w ciągu writeDelay kończy się jednym zapisem najnowszej migawki
+    private void changed() {
+        version.incrementAndGet();
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writer.schedule(() -> {
+                    writeScheduled.set(false);
+                    saveToFile();
+                }, writeDelay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Menedżer zamknięty
+            }
+        }
+    }
 
+    // Wywoływane tylko na wątku favorites-writer
     private void saveToFile() {
+        long target = version.get();
+        if (target == writtenVersion) return;
         try {
             JSONObject json = new JSONObject();
-            json.put("favorites", new JSONArray(favorites));
-            Files.writeString(Paths.get(FILE_PATH), json.toString(4));
-        } catch (Exception e) { e.printStackTrace(); }
+            json.put("favorites", new JSONArray(snapshot.get().favorites()));
+
+            Path dir = file.toAbsolutePath().getParent();
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(tmp, json.toString());
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            writtenVersion = target;
+        } catch (IOException e) { e.printStackTrace(); }
     }
 
     private void loadFromFile() {
         try {
-            File file = new File(FILE_PATH);
-            if (file.exists()) {
-                JSONObject json = new JSONObject(Files.readString(Paths.get(FILE_PATH)));
+            if (Files.exists(file)) {
+                JSONObject json = new JSONObject(Files.readString(file));
                 JSONArray array = json.getJSONArray("favorites");
-                favorites.clear();
-                for (int i = 0; i < array.length(); i++) favorites.add(array.getString(i));
+                List<String> list = new ArrayList<>(array.length());
+                Map<String, String> map = new HashMap<>();
+                for (int i = 0; i < array.length(); i++) {
+                    String city = array.getString(i).trim();
+                    if (!city.isEmpty() && map.putIfAbsent(Gazetteer.normalize(city), city) == null) list.add(city);
+                }
+                snapshot.set(new Snapshot(Collections.unmodifiableList(list), Collections.unmodifiableMap(map)));
             }
         } catch (Exception e) { e.printStackTrace(); }
     }
-
-    public void clearAll() {
-        favorites.clear();
-        saveToFile();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package org.atmo.atmo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Utrzymuje prognozy ulubionych miast w cache, zanim użytkownik je wybierze.
+ * Cykl odświeżania jest powiązany z TTL prognozy, a ostatnio oglądane miasta idą pierwsze.
+ */
+public class FavoritesRefreshScheduler {
+
+    private static final double JITTER = 0.1;
+    private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(15);
+
+    private final WeatherService weatherService;
+    private final Duration interval;
+    private final Duration refreshAfter;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "favorites-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, Long> lastViewed = new ConcurrentHashMap<>();
+    private final Map<String, WeatherService.WeatherData> lastPushed = new ConcurrentHashMap<>();
+    private volatile long lastInteractionMillis = System.currentTimeMillis();
+    private volatile boolean backgrounded;
+    private boolean skippedWhilePaused;
+    private volatile Consumer<WeatherService.WeatherData> onUpdate;
+    private ScheduledFuture<?> nextRun;
+
+    public FavoritesRefreshScheduler(WeatherService weatherService) {
+        this.weatherService = weatherService;
+        Duration ttl = weatherService.getForecastCache().getFreshTtl();
+        // Co pół TTL, odświeżając wpisy starsze niż 0.4 TTL - ulubione nie zdążą się przeterminować
+        this.interval = ttl.dividedBy(2);
+        this.refreshAfter = ttl.multipliedBy(2).dividedBy(5);
+    }
+
+    public void setOnUpdate(Consumer<WeatherService.WeatherData> listener) {
+        this.onUpdate = listener;
+    }
+
+    public synchronized void start() {
+        if (nextRun == null) schedule(jittered(Duration.ofSeconds(5)));
+    }
+
+    public synchronized void stop() {
+        if (nextRun != null) nextRun.cancel(false);
+        nextRun = null;
+        scheduler.shutdownNow();
+    }
+
+    public void markViewed(String city) {
+        lastViewed.put(Gazetteer.normalize(city), System.currentTimeMillis());
+        touch();
+    }
+
+    /** Dowolna aktywność użytkownika (wejście w oknie, fokus) - wołane często, więc tanie. */
+    public void touch() {
+        boolean wasIdle = isIdle();
+        lastInteractionMillis = System.currentTimeMillis();
+        if (wasIdle) resumeIfSkipped();
+    }
+
+    public void setBackgrounded(boolean backgrounded) {
+        this.backgrounded = backgrounded;
+        if (!backgrounded) resumeIfSkipped();
+    }
+
+    private boolean isPaused() {
+        return backgrounded || isIdle();
+    }
+
+    private boolean isIdle() {
+        return System.currentTimeMillis() - lastInteractionMillis > IDLE_TIMEOUT.toMillis();
+    }
+
+    // Po powrocie do aplikacji nie czekamy na kolejny cykl
+    private synchronized void resumeIfSkipped() {
+        if (!skippedWhilePaused || nextRun == null) return;
+        skippedWhilePaused = false;
+        nextRun.cancel(false);
+        schedule(Duration.ZERO);
+    }
+
+    private synchronized void schedule(Duration delay) {
+        if (scheduler.isShutdown()) return;
+        nextRun = scheduler.schedule(this::runCycle, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void runCycle() {
+        boolean paused = isPaused();
+        try {
+            if (!paused) refreshFavorites();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                skippedWhilePaused = paused;
+                schedule(jittered(interval));
+            }
+        }
+    }
+
+    private void refreshFavorites() {
+        List<String> favorites = new ArrayList<>(FavoritesManager.getInstance().getFavorites());
+        favorites.sort(Comparator.comparingLong((String city) -> lastViewed.getOrDefault(Gazetteer.normalize(city), 0L)).reversed());
+
+        List<WeatherService.Coordinates> locations = new ArrayList<>();
+        for (String city : favorites) {
+            try {
+                WeatherService.Coordinates coords = weatherService.getCoordinatesForCity(city, RequestScheduler.Priority.BACKGROUND);
+                if (coords != null) locations.add(coords);
+            } catch (Exception e) {
+                System.err.println("Nie udało się ustalić położenia dla " + city + ": " + e.getMessage());
+            }
+        }
+        if (locations.isEmpty()) return;
+
+        Map<WeatherService.Coordinates, WeatherService.WeatherData> results =
+                weatherService.getWeatherDataBatch(locations, refreshAfter);
+
+        Consumer<WeatherService.WeatherData> listener = onUpdate;
+        for (WeatherService.WeatherData data : results.values()) {
+            WeatherService.WeatherData previous = lastPushed.put(data.city(), data);
+            if (listener != null && !data.equals(previous)) listener.accept(data);
+        }
+    }
+
+    private static Duration jittered(Duration base) {
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Duration.ofMillis((long) (base.toMillis() * factor));
+    }
+}
@@ -0,0 +1,247 @@
+package org.atmo.atmo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ForecastCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+    private static final String DEFAULT_DIR = "forecast-cache";
+
+    public record Key(int latitudeE2, int longitudeE2) {
+        // Kwantyzacja do 0.01° (~1 km) - sąsiednie zapytania trafiają w ten sam wpis
+        public static Key of(double latitude, double longitude) {
+            return new Key((int) Math.round(latitude * 100), (int) Math.round(longitude * 100));
+        }
+
+        String fileName() { return latitudeE2 + "_" + longitudeE2 + ".bin"; }
+    }
+
+    public record Lookup(WeatherService.WeatherData data, boolean stale, long ageMillis) {}
+
+    public record Stats(long hits, long staleHits, long diskHits, long misses, long evictions) {}
+
+    private record Entry(WeatherService.WeatherData data, long fetchedAtMillis) {}
+
+    private final int maxEntries;
+    private final Duration freshTtl;
+    private final Duration staleTtl;
+    private final Path diskDir;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final LinkedHashMap<Key, Entry> memory;
+    // Wpisy czekające na zapis; kilka zapisów tego samego klucza kończy się jednym plikiem z najnowszym
+    private final Map<Key, Entry> pendingWrites = new ConcurrentHashMap<>();
+    private final ExecutorService writer;
+
+    public ForecastCache(int maxEntries, Duration freshTtl, Duration staleTtl, Path diskDir) {
+        this.maxEntries = maxEntries;
+        this.freshTtl = freshTtl;
+        this.staleTtl = staleTtl;
+        this.diskDir = diskDir;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() <= ForecastCache.this.maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+        this.writer = diskDir == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "forecast-cache-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static ForecastCache createDefault() {
+        return new ForecastCache(
+                Integer.getInteger("atmo.cache.maxEntries", DEFAULT_MAX_ENTRIES),
+                Duration.ofMinutes(Integer.getInteger("atmo.cache.freshMinutes", 10)),
+                Duration.ofMinutes(Integer.getInteger("atmo.cache.staleMinutes", 360)),
+                Paths.get(System.getProperty("atmo.cache.dir", DEFAULT_DIR))
+        );
+    }
+
+    public Duration getFreshTtl() { return freshTtl; }
+
+    public Lookup get(double latitude, double longitude) {
+        Entry entry = entry(Key.of(latitude, longitude));
+        long age = entry == null ? Long.MAX_VALUE : System.currentTimeMillis() - entry.fetchedAtMillis();
+        if (age <= freshTtl.toMillis()) {
+            hits.incrementAndGet();
+            return new Lookup(entry.data(), false, age);
+        }
+        if (age <= freshTtl.toMillis() + staleTtl.toMillis()) {
+            staleHits.incrementAndGet();
+            return new Lookup(entry.data(), true, age);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Ostatnie znane dane bez względu na wiek - awaryjnie, gdy API jest niedostępne. */
+    public Lookup getAnyAge(double latitude, double longitude) {
+        Entry entry = entry(Key.of(latitude, longitude));
+        if (entry == null) return null;
+        return new Lookup(entry.data(), true, System.currentTimeMillis() - entry.fetchedAtMillis());
+    }
+
+    private Entry entry(Key key) {
+        Entry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+        }
+        if (entry == null) entry = pendingWrites.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) {
+                diskHits.incrementAndGet();
+                synchronized (memory) {
+                    memory.put(key, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    public void put(double latitude, double longitude, WeatherService.WeatherData data) {
+        Key key = Key.of(latitude, longitude);
+        Entry entry = new Entry(data, System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        // Zapis na dysk idzie na osobny wątek - put() bywa wołane na wątku kończącym żądanie HTTP
+        if (writer == null || pendingWrites.put(key, entry) != null) return;
+        try {
+            writer.execute(() -> writeToDisk(key));
+        } catch (RejectedExecutionException e) {
+            pendingWrites.remove(key);
+        }
+    }
+
+    /** Czeka na zapis wszystkich zaległych wpisów (np. przy zamykaniu aplikacji). */
+    public void flush() {
+        if (writer == null) return;
+        try {
+            // Zapis przełożony w trakcie oczekiwania trafia za znacznik, więc czekamy do opróżnienia kolejki
+            do {
+                writer.submit(() -> {}).get();
+            } while (!pendingWrites.isEmpty());
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), staleHits.get(), diskHits.get(), misses.get(), evictions.get());
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+    }
+
+    // Wywoływane tylko na wątku forecast-cache-writer; plik tymczasowy i atomowe przeniesienie,
+    // więc czytelnik nigdy nie zobaczy urwanego wpisu
+    private void writeToDisk(Key key) {
+        Entry entry = pendingWrites.get(key);
+        if (entry == null) return;
+        try {
+            Files.createDirectories(diskDir);
+            Path file = diskDir.resolve(key.fileName());
+            Path tmp = Files.createTempFile(diskDir, key.fileName(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    writeEntry(out, entry);
+                }
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            // Nowszy wpis dodany w trakcie zapisu zostaje w kolejce i dostaje własny zapis
+            if (!pendingWrites.remove(key, entry)) {
+                try {
+                    writer.execute(() -> writeToDisk(key));
+                } catch (RejectedExecutionException e) {
+                    pendingWrites.remove(key);
+                }
+            }
+        }
+    }
+
+    private Entry readFromDisk(Key key) {
+        if (diskDir == null) return null;
+        Path file = diskDir.resolve(key.fileName());
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Entry entry = readEntry(in);
+            if (in.read() != -1) throw new IOException("nadmiarowe bajty po wpisie");
+            return entry;
+        } catch (Exception e) {
+            // Uszkodzony wpis traktujemy jak brak danych i usuwamy, żeby nie czytać go ponownie
+            System.err.println("Usunięto uszkodzony wpis cache " + file.getFileName() + ": " + e);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException delete) { delete.printStackTrace(); }
+            return null;
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.fetchedAtMillis());
+        writeData(out, entry.data());
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        long fetchedAt = in.readLong();
+        return new Entry(readData(in), fetchedAt);
+    }
+
+    static void writeData(DataOutput out, WeatherService.WeatherData data) throws IOException {
+        out.writeUTF(data.city());
+        out.writeDouble(data.currentTemp());
+        out.writeUTF(data.currentCondition().name());
+        data.hourly().writeTo(out);
+        data.daily().writeTo(out);
+    }
+
+    static WeatherService.WeatherData readData(DataInput in) throws IOException {
+        return new WeatherService.WeatherData(
+                in.readUTF(),
+                in.readDouble(),
+                WeatherCondition.valueOf(in.readUTF()),
+                ForecastSeries.readFrom(in),
+                ForecastSeries.readFrom(in)
+        );
+    }
+}
@@ -0,0 +1,325 @@
+package org.atmo.atmo;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Wykres prognozy godzinowej na jednym Canvas: krzywa temperatury, słupki opadu i ikony warunków
+ * z {@link IconSprite}. Mieści całą serię (do 16 dni) bez dokładania węzłów do sceny.
+ * Przeciąganie i kółko przesuwają widok, Ctrl + kółko powiększa, dwuklik wraca do bieżącej godziny.
+ * Nowe dane przerysowują tylko zmienione kolumny, a wszystkie zmiany z jednego pulsu - jednym rysowaniem.
+ */
+public class ForecastChart extends Pane {
+
+    private static final double DEFAULT_SPAN = 24;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int ICON_SIZE = 22;
+    private static final double ICON_ROW = ICON_SIZE + 4;
+    private static final double LABEL_ROW = 16;
+    private static final double PRECIPITATION_HEIGHT = 24;
+    // Tyle mm/h wypełnia cały słupek; większe opady są przycinane
+    private static final double PRECIPITATION_FULL_MM = 5;
+    private static final double MIN_LABEL_SPACING = 40;
+    private static final int[] LABEL_STEPS = {1, 2, 3, 6, 12, 24, 48, 96};
+    private static final Font FONT = Font.font(11);
+    private static final Color CURVE = Color.WHITE;
+    private static final Color TEXT = Color.rgb(255, 255, 255, 0.85);
+    private static final Color GRID = Color.rgb(255, 255, 255, 0.2);
+    private static final Color RAIN = Color.rgb(120, 180, 255, 0.75);
+    private static final Color NOW = Color.rgb(255, 210, 80, 0.9);
+
+    private final Canvas canvas = new Canvas();
+    private final ChartViewport viewport = new ChartViewport(DEFAULT_SPAN);
+    private ForecastSeries series = ForecastSeries.EMPTY;
+    private double minTemp;
+    private double maxTemp;
+    private int nowIndex = -1;
+    private boolean followNow = true;
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+
+    // Zmiany zebrane do najbliższego rysowania: cały widok albo zakres indeksów
+    private boolean fullDirty;
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = Integer.MIN_VALUE;
+    private boolean drawScheduled;
+    private double dragX;
+    private double dragStart;
+
+    public ForecastChart() {
+        getStyleClass().add("forecast-chart");
+        // Canvas nie wpływa na preferowany rozmiar - to on dopasowuje się do panelu
+        canvas.setManaged(false);
+        getChildren().add(canvas);
+
+        setOnScroll(this::handleScroll);
+        setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragStart = viewport.start();
+        });
+        setOnMouseDragged(e -> {
+            double points = (dragX - e.getX()) / viewport.pointWidth(canvas.getWidth());
+            if (viewport.panTo(dragStart + points)) viewChanged();
+        });
+        setOnMouseClicked(e -> {
+            if (e.getClickCount() != 2) return;
+            followNow = true;
+            viewport.reset(Math.max(0, nowIndex));
+            invalidateAll();
+        });
+    }
+
+    /**
+     * Podmienia serię; gdy oś czasu i skala się nie zmieniły, przerysowane zostaną tylko zmienione punkty.
+     * Zwraca true, jeśli cokolwiek trzeba narysować od nowa.
+     */
+    public boolean setSeries(ForecastSeries newSeries, long nowEpochSecond) {
+        int[] changed = newSeries.changedRange(series);
+        series = newSeries;
+        int now = Math.min(newSeries.indexAtOrAfter(nowEpochSecond), newSeries.size() - 1);
+        boolean scaleChanged = updateScale();
+
+        if (changed == null || scaleChanged) {
+            nowIndex = now;
+            viewport.setCount(newSeries.size());
+            if (followNow) viewport.reset(Math.max(0, now));
+            invalidateAll();
+            return true;
+        }
+
+        boolean dirty = false;
+        if (changed.length == 2) {
+            invalidate(changed[0], changed[1]);
+            dirty = true;
+        }
+        if (now != nowIndex) {
+            int previous = nowIndex;
+            nowIndex = now;
+            // Widok podąża za bieżącą godziną, dopóki użytkownik go nie przesunie
+            if (followNow && viewport.panTo(Math.max(0, now))) {
+                invalidateAll();
+            } else {
+                invalidate(previous, previous);
+                invalidate(now, now);
+            }
+            dirty = true;
+        }
+        return dirty;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = getWidth();
+        double height = getHeight();
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            invalidateAll();
+        }
+    }
+
+    private void handleScroll(ScrollEvent e) {
+        double width = canvas.getWidth();
+        if (width <= 0 || series.isEmpty()) return;
+        boolean moved;
+        if (e.isControlDown()) {
+            moved = viewport.zoomAt(e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, e.getX() / width);
+        } else {
+            double delta = e.getDeltaX() != 0 ? e.getDeltaX() : e.getDeltaY();
+            moved = viewport.panBy(-delta / viewport.pointWidth(width));
+        }
+        if (moved) viewChanged();
+        e.consume();
+    }
+
+    private void viewChanged() {
+        followNow = false;
+        invalidateAll();
+    }
+
+    // Skala obejmuje całą serię i jest zaokrąglona do pełnych stopni - przesuwanie jej nie zmienia
+    private boolean updateScale() {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < series.size(); i++) {
+            float t = series.temperature(i);
+            if (Float.isNaN(t)) continue;
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        if (min > max) {
+            min = 0;
+            max = 1;
+        }
+        min = Math.floor(min) - 1;
+        max = Math.ceil(max) + 1;
+        boolean changed = min != minTemp || max != maxTemp;
+        minTemp = min;
+        maxTemp = max;
+        return changed;
+    }
+
+    private void invalidateAll() {
+        fullDirty = true;
+        scheduleDraw();
+    }
+
+    private void invalidate(int from, int to) {
+        if (from < 0) return;
+        dirtyFrom = Math.min(dirtyFrom, from);
+        dirtyTo = Math.max(dirtyTo, to);
+        scheduleDraw();
+    }
+
+    private void scheduleDraw() {
+        if (drawScheduled) return;
+        drawScheduled = true;
+        Platform.runLater(this::draw);
+    }
+
+    private void draw() {
+        drawScheduled = false;
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        boolean full = fullDirty;
+        Metrics.Timer timer = Metrics.getInstance().start("chart.draw", full ? "pełne" : "częściowe");
+        int from = dirtyFrom;
+        int to = dirtyTo;
+        fullDirty = false;
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = Integer.MIN_VALUE;
+        // Bez rozmiaru nie ma czego rysować - layoutChildren zleci pełne rysowanie, gdy go dostaniemy
+        if (width <= 0 || height <= 0 || series.isEmpty()) {
+            if (width > 0 && height > 0) canvas.getGraphicsContext2D().clearRect(0, 0, width, height);
+            return;
+        }
+
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        int first = Math.max(0, viewport.firstVisible() - 1);
+        int last = Math.min(series.size() - 1, viewport.lastVisible() + 1);
+        if (full) {
+            g.clearRect(0, 0, width, height);
+            drawColumns(g, first, last);
+        } else {
+            from = Math.max(from, first);
+            to = Math.min(to, last);
+            if (from > to) return;
+            double half = viewport.pointWidth(width) / 2;
+            double left = Math.max(0, viewport.x(from, width) - half);
+            double right = Math.min(width, viewport.x(to, width) + half);
+            g.save();
+            g.beginPath();
+            g.rect(left, 0, right - left, height);
+            g.clip();
+            g.clearRect(left, 0, right - left, height);
+            // Odcinki krzywej i etykiety sąsiednich kolumn wchodzą w ten pas - rysujemy je z obcięciem
+            int margin = (int) Math.ceil(MIN_LABEL_SPACING / viewport.pointWidth(width)) + 1;
+            drawColumns(g, Math.max(first, from - margin), Math.min(last, to + margin));
+            g.restore();
+        }
+        timer.stop(true);
+    }
+
+    private void drawColumns(GraphicsContext g, int from, int to) {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        double pointWidth = viewport.pointWidth(width);
+        double labelsY = height - 4;
+        double precipitationBase = height - LABEL_ROW - 2;
+        double curveTop = ICON_ROW + 16;
+        double curveBottom = precipitationBase - PRECIPITATION_HEIGHT - 4;
+        int labelStep = step(MIN_LABEL_SPACING, pointWidth);
+        int iconStep = step(ICON_SIZE + 4, pointWidth);
+
+        // Północ: linia siatki
+        g.setStroke(GRID);
+        g.setLineWidth(1);
+        for (int i = from; i <= to; i++) {
+            if (hourOfDay(i) != 0) continue;
+            double x = Math.floor(viewport.x(i, width) - pointWidth / 2) + 0.5;
+            g.strokeLine(x, ICON_ROW, x, precipitationBase);
+        }
+
+        g.setFill(RAIN);
+        for (int i = from; i <= to; i++) {
+            float mm = series.precipitation(i);
+            if (!(mm > 0)) continue;
+            double h = Math.min(1, mm / PRECIPITATION_FULL_MM) * PRECIPITATION_HEIGHT;
+            g.fillRect(viewport.x(i, width) - pointWidth * 0.35, precipitationBase - h, pointWidth * 0.7, h);
+        }
+
+        // Cała krzywa jednym wywołaniem - tablice współrzędnych używamy ponownie
+        int n = to - from + 1;
+        if (xs.length < n) {
+            xs = new double[n];
+            ys = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            xs[i] = viewport.x(from + i, width);
+            ys[i] = temperatureY(series.temperature(from + i), curveTop, curveBottom);
+        }
+        g.setStroke(CURVE);
+        g.setLineWidth(2);
+        g.strokePolyline(xs, ys, n);
+
+        if (nowIndex >= from && nowIndex <= to) {
+            double x = viewport.x(nowIndex, width);
+            g.setStroke(NOW);
+            g.setLineWidth(1.5);
+            g.strokeLine(x, ICON_ROW, x, precipitationBase);
+        }
+
+        IconSprite sprite = IconSprite.get(ICON_SIZE);
+        g.setFont(FONT);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setFill(TEXT);
+        for (int i = from; i <= to; i++) {
+            double x = viewport.x(i, width);
+            if (isStep(i, iconStep)) sprite.draw(g, series.condition(i), x, ICON_ROW / 2);
+            if (!isStep(i, labelStep)) continue;
+            g.fillText(String.format("%.0f°", series.temperature(i)), x, ys[i - from] - 6);
+            g.fillText(hourOfDay(i) == 0 ? dayName(i) : series.hourLabel(i), x, labelsY);
+        }
+    }
+
+    private double temperatureY(float temperature, double top, double bottom) {
+        return bottom - (temperature - minTemp) / (maxTemp - minTemp) * (bottom - top);
+    }
+
+    // Najmniejszy krok (w godzinach), przy którym kolejne elementy są co najmniej minSpacing pikseli od siebie
+    private static int step(double minSpacing, double pointWidth) {
+        for (int step : LABEL_STEPS) {
+            if (step * pointWidth >= minSpacing) return step;
+        }
+        return LABEL_STEPS[LABEL_STEPS.length - 1];
+    }
+
+    // Kroki są wyrównane do pełnych godzin doby, więc przy przesuwaniu etykiety nie "skaczą"
+    private boolean isStep(int i, int step) {
+        int hour = hourOfDay(i);
+        if (step <= 24) return hour % step == 0;
+        return hour == 0 && Math.floorMod(epochDay(i), step / 24) == 0;
+    }
+
+    private int hourOfDay(int i) {
+        return (int) (Math.floorMod(series.time(i) + series.utcOffsetSeconds(), 86_400L) / 3600);
+    }
+
+    private long epochDay(int i) {
+        return Math.floorDiv(series.time(i) + series.utcOffsetSeconds(), 86_400L);
+    }
+
+    private String dayName(int i) {
+        DayOfWeek day = LocalDate.ofEpochDay(epochDay(i)).getDayOfWeek();
+        return ForecastParser.dayName(day.getValue());
+    }
+}
@@ -0,0 +1,494 @@
+package org.atmo.atmo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Lokalna historia prognoz godzinowych: dopisywane segmenty mapowane do pamięci, po jednym na miesiąc (UTC).
+ *
+ * Układ segmentu: nagłówek {@value #HEADER_SIZE} B (magic, wersja, flagi), potem rekordy
+ * [długość, CRC32 treści, treść]. Treść rekordu: klucz lokalizacji, czas pobrania, przesunięcie UTC,
+ * liczba punktów, czas bazowy, kolumny przesunięć czasu (int), temperatur (float) i kodów WMO (byte).
+ * Po awarii segment jest ucinany na pierwszym rekordzie z błędną sumą kontrolną.
+ *
+ * Rekordy są dopisywane zwykłym zapisem pozycyjnym, a mapowanie (tylko do odczytu) służy zapytaniom.
+ * Mapowanie znika dopiero razem z buforem, więc plików segmentów nie nadpisujemy: kompakcja zapisuje
+ * nową generację miesiąca, a poprzednią usuwamy, gdy system na to pozwoli.
+ */
+public class ForecastHistoryStore implements AutoCloseable {
+
+    static final int MAGIC = 0x41544853; // "ATHS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int FLAG_COMPACTED = 1;
+
+    private static final int RECORD_HEADER = 8;
+    private static final int PAYLOAD_FIXED = 8 + 8 + 4 + 4 + 8;
+    private static final int POINT_SIZE = 4 + 4 + 1;
+    private static final String DEFAULT_DIR = "history";
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final Map<YearMonth, Segment> open = new HashMap<>();
+    private final Map<Long, ForecastSeries> lastAppended = new HashMap<>();
+
+    public ForecastHistoryStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+    }
+
+    public static ForecastHistoryStore openDefault() throws IOException {
+        return new ForecastHistoryStore(Paths.get(System.getProperty("atmo.history", DEFAULT_DIR)));
+    }
+
+    /**
+     * Dopisuje punkty serii (np. całą prognozę godzinową) dla lokalizacji; rekordy dzielone są na miesiące.
+     * Godziny o tej samej wartości co ostatnio zapisana są pomijane - odświeżenie co kilka minut
+     * zwykle nie zmienia prognozy i nie dopisuje wtedy nic.
+     */
+    public synchronized void append(String location, ForecastSeries series, long fetchedAtMillis) throws IOException {
+        if (series.isEmpty()) return;
+        long key = locationKey(location);
+        ForecastSeries known = lastAppended.get(key);
+        // Pierwszy zapis lokalizacji od startu porównujemy z tym, co już jest na dysku
+        if (known == null) known = query(location, series.time(0), series.time(series.size() - 1) + 1);
+
+        TreeMap<Long, Point> changed = new TreeMap<>();
+        YearMonth month = null;
+        for (int i = 0; i < series.size(); i++) {
+            long time = series.time(i);
+            if (unchanged(known, time, series.temperature(i), series.weatherCode(i))) continue;
+            YearMonth pointMonth = monthOf(time);
+            if (!pointMonth.equals(month)) {
+                write(month, key, fetchedAtMillis, series.utcOffsetSeconds(), changed);
+                month = pointMonth;
+            }
+            changed.put(time, new Point(series.temperature(i), (byte) series.weatherCode(i)));
+        }
+        write(month, key, fetchedAtMillis, series.utcOffsetSeconds(), changed);
+        lastAppended.put(key, series);
+    }
+
+    private static boolean unchanged(ForecastSeries known, long time, float temperature, int code) {
+        int i = known.indexAtOrAfter(time);
+        return i < known.size() && known.time(i) == time
+                && Float.compare(known.temperature(i), temperature) == 0 && (byte) known.weatherCode(i) == (byte) code;
+    }
+
+    private void write(YearMonth month, long key, long fetchedAtMillis, int utcOffset, TreeMap<Long, Point> points)
+            throws IOException {
+        if (points.isEmpty()) return;
+        Segment segment = open.get(month);
+        if (segment == null) segment = segment(files().getOrDefault(month, SegmentFile.first(dir, month)));
+        // Dopisek do skompaktowanego miesiąca: następna kompakcja musi go przepisać ponownie
+        if (segment.compacted()) segment.clearCompacted();
+        segment.appendPoints(key, fetchedAtMillis, utcOffset, points);
+        points.clear();
+    }
+
+    /**
+     * Punkty lokalizacji z przedziału [fromEpochSecond, toEpochSecond), posortowane po czasie.
+     * Dla godziny zapisanej kilka razy wygrywa najpóźniej pobrana prognoza.
+     */
+    public synchronized ForecastSeries query(String location, long fromEpochSecond, long toEpochSecond) throws IOException {
+        long key = locationKey(location);
+        TreeMap<Long, Point> points = new TreeMap<>();
+        int utcOffset = 0;
+        for (SegmentFile file : files().values()) {
+            YearMonth month = file.month();
+            if (startOf(month.plusMonths(1)) <= fromEpochSecond || startOf(month) >= toEpochSecond) continue;
+            utcOffset = segment(file).collect(key, fromEpochSecond, toEpochSecond, points, utcOffset);
+        }
+
+        long[] times = new long[points.size()];
+        float[] temperatures = new float[points.size()];
+        byte[] codes = new byte[points.size()];
+        int i = 0;
+        for (Map.Entry<Long, Point> e : points.entrySet()) {
+            times[i] = e.getKey();
+            temperatures[i] = e.getValue().temperature();
+            codes[i] = e.getValue().code();
+            i++;
+        }
+        return new ForecastSeries(times, temperatures, null, null, null, codes, utcOffset);
+    }
+
+    /** Usuwa całe segmenty starsze niż okres przechowywania. */
+    public synchronized int retain(Duration retention, Instant now) throws IOException {
+        YearMonth oldestKept = monthOf(now.minus(retention).getEpochSecond());
+        int removed = 0;
+        for (SegmentFile file : files().values()) {
+            if (!file.month().isBefore(oldestKept)) continue;
+            release(file.month());
+            if (delete(file.path())) removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Przepisuje miesiące z dopiskami od ostatniej kompakcji (także bieżący, więc wołana cyklicznie
+     * trzyma go w ryzach), zostawiając jeden rekord na lokalizację i tylko najnowszą wartość każdej godziny.
+     * Wynik trafia do pliku następnej generacji, a poprzedni jest usuwany.
+     */
+    public synchronized int compact() throws IOException {
+        int compacted = 0;
+        for (SegmentFile file : files().values()) {
+            Segment segment = segment(file);
+            if (segment.compacted()) continue;
+
+            Path tmp = Files.createTempFile(dir, file.month() + "-", ".tmp");
+            try {
+                Segment target = Segment.create(tmp);
+                try {
+                    for (Long key : segment.locations()) {
+                        TreeMap<Long, Point> points = new TreeMap<>();
+                        int utcOffset = segment.collect(key, Long.MIN_VALUE, Long.MAX_VALUE, points, 0);
+                        target.appendPoints(key, segment.lastFetch(key), utcOffset, points);
+                    }
+                    target.markCompacted();
+                    target.force();
+                } finally {
+                    target.close();
+                }
+                Path next = file.next(dir);
+                try {
+                    Files.move(tmp, next, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, next);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            // Kolejne użycie otworzy nową generację; starej nie nadpisujemy, bo jej mapowanie może jeszcze żyć
+            release(file.month());
+            delete(file.path());
+            compacted++;
+        }
+        return compacted;
+    }
+
+    /** Wymusza zapis dopisanych rekordów na dysk. */
+    public synchronized void flush() {
+        for (Segment segment : open.values()) segment.force();
+    }
+
+    /** Bajty zajęte przez rekordy we wszystkich segmentach. */
+    public synchronized long bytesUsed() throws IOException {
+        long total = 0;
+        for (SegmentFile file : files().values()) total += segment(file).writePosition();
+        return total;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : open.values()) {
+            segment.force();
+            segment.close();
+        }
+        open.clear();
+    }
+
+    static long locationKey(String location) {
+        // FNV-1a 64 po znormalizowanej nazwie - kolizje przy setkach lokalizacji są pomijalne
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : Gazetteer.normalize(location).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static YearMonth monthOf(long epochSecond) {
+        return YearMonth.from(Instant.ofEpochSecond(epochSecond).atOffset(ZoneOffset.UTC));
+    }
+
+    private static long startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Najnowsza generacja pliku każdego miesiąca. Starsze zostają po kompakcji, gdy system nie pozwolił
+     * ich skasować (na Windows plik z żywym mapowaniem) - usuwamy je przy kolejnym przeglądzie.
+     */
+    private TreeMap<YearMonth, SegmentFile> files() throws IOException {
+        TreeMap<YearMonth, SegmentFile> files = new TreeMap<>();
+        List<Path> obsolete = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path path : paths) {
+                SegmentFile file;
+                try {
+                    file = SegmentFile.parse(path);
+                } catch (RuntimeException e) {
+                    System.err.println("Pominięto nieznany plik historii: " + path.getFileName());
+                    continue;
+                }
+                SegmentFile previous = files.get(file.month());
+                if (previous != null && previous.generation() > file.generation()) {
+                    obsolete.add(file.path());
+                    continue;
+                }
+                if (previous != null) obsolete.add(previous.path());
+                files.put(file.month(), file);
+            }
+        }
+        for (Path path : obsolete) delete(path);
+        return files;
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Historia: nie udało się usunąć " + path.getFileName() + " (" + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    private void release(YearMonth month) {
+        Segment segment = open.remove(month);
+        if (segment != null) segment.close();
+    }
+
+    private Segment segment(SegmentFile file) throws IOException {
+        Segment segment = open.get(file.month());
+        if (segment != null) return segment;
+        segment = Files.exists(file.path()) ? Segment.open(file.path()) : Segment.create(file.path());
+        open.put(file.month(), segment);
+        return segment;
+    }
+
+    private record Point(float temperature, byte code) {}
+
+    /** Plik segmentu: miesiąc i generacja kompakcji (2024-01.seg, potem 2024-01.1.seg, 2024-01.2.seg...). */
+    private record SegmentFile(YearMonth month, int generation, Path path) {
+        static SegmentFile parse(Path path) {
+            String name = path.getFileName().toString();
+            String base = name.substring(0, name.length() - SUFFIX.length());
+            int dot = base.indexOf('.');
+            if (dot < 0) return new SegmentFile(YearMonth.parse(base), 0, path);
+            return new SegmentFile(YearMonth.parse(base.substring(0, dot)), Integer.parseInt(base.substring(dot + 1)), path);
+        }
+
+        static SegmentFile first(Path dir, YearMonth month) {
+            return new SegmentFile(month, 0, dir.resolve(month + SUFFIX));
+        }
+
+        Path next(Path dir) {
+            return dir.resolve(month + "." + (generation + 1) + SUFFIX);
+        }
+    }
+
+    /**
+     * Jeden miesiąc: rekordy dopisywane zapisem pozycyjnym przez kanał, odczyt przez mapowanie tylko do odczytu
+     * i indeks lokalizacja -> offsety rekordów.
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private MappedByteBuffer view;
+        private int flags;
+        private int writePosition;
+        private final Map<Long, List<Integer>> index = new HashMap<>();
+        private final Map<Long, Long> lastFetch = new HashMap<>();
+
+        private Segment(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        static Segment create(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(channel);
+            try {
+                segment.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).flip(), 0);
+            } catch (IOException e) {
+                segment.close();
+                throw e;
+            }
+            segment.writePosition = HEADER_SIZE;
+            return segment;
+        }
+
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(channel);
+            try {
+                ByteBuffer header = channel.size() < HEADER_SIZE ? null : segment.read(0, HEADER_SIZE);
+                if (header == null || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Nieprawidłowy format segmentu historii: " + file);
+                }
+                segment.flags = header.getInt(8);
+                segment.recover(file);
+            } catch (IOException e) {
+                segment.close();
+                throw e;
+            }
+            return segment;
+        }
+
+        boolean compacted() {
+            return (flags & FLAG_COMPACTED) != 0;
+        }
+
+        void markCompacted() throws IOException {
+            setFlags(flags | FLAG_COMPACTED);
+        }
+
+        void clearCompacted() throws IOException {
+            setFlags(flags & ~FLAG_COMPACTED);
+        }
+
+        private void setFlags(int flags) throws IOException {
+            write(ByteBuffer.allocate(4).putInt(0, flags), 8);
+            this.flags = flags;
+        }
+
+        int writePosition() { return writePosition; }
+
+        Iterable<Long> locations() { return new ArrayList<>(index.keySet()); }
+
+        long lastFetch(long key) { return lastFetch.getOrDefault(key, 0L); }
+
+        // Przegląd rekordów od nagłówka; pierwszy niepełny lub z błędną sumą kończy segment
+        private void recover(Path file) throws IOException {
+            long size = channel.size();
+            int position = HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (position + RECORD_HEADER <= size) {
+                ByteBuffer header = read(position, RECORD_HEADER);
+                int length = header.getInt(0);
+                if (length < PAYLOAD_FIXED || position + RECORD_HEADER + (long) length > size) break;
+                ByteBuffer payload = read(position + RECORD_HEADER, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != header.getInt(4)) break;
+                indexRecord(position, payload.getLong(0), payload.getLong(8));
+                position += RECORD_HEADER + length;
+            }
+            writePosition = position;
+
+            // Resztki urwanego rekordu ucinamy, żeby kolejny zapis nie skleił się ze starymi bajtami
+            if (position < size) {
+                channel.truncate(position);
+                System.err.println("Historia: ucięto uszkodzony koniec segmentu " + file.getFileName());
+            }
+        }
+
+        private void indexRecord(int position, long key, long fetchedAtMillis) {
+            index.computeIfAbsent(key, k -> new ArrayList<>()).add(position);
+            lastFetch.merge(key, fetchedAtMillis, Math::max);
+        }
+
+        // Rekord trafia na dysk jednym zapisem z długością i CRC, więc urwany zapis nie przejdzie weryfikacji
+        void appendPoints(long key, long fetchedAtMillis, int utcOffset, TreeMap<Long, Point> points) throws IOException {
+            if (points.isEmpty()) return;
+            int count = points.size();
+            int length = PAYLOAD_FIXED + count * POINT_SIZE;
+            if ((long) writePosition + RECORD_HEADER + length > Integer.MAX_VALUE) {
+                throw new IOException("Segment historii przekroczył 2 GB");
+            }
+            long base = points.firstKey();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+            int payload = RECORD_HEADER;
+            record.putLong(payload, key);
+            record.putLong(payload + 8, fetchedAtMillis);
+            record.putInt(payload + 16, utcOffset);
+            record.putInt(payload + 20, count);
+            record.putLong(payload + 24, base);
+            int offsets = payload + PAYLOAD_FIXED;
+            int temperatures = offsets + count * 4;
+            int codes = temperatures + count * 4;
+            int i = 0;
+            for (Map.Entry<Long, Point> e : points.entrySet()) {
+                record.putInt(offsets + i * 4, (int) (e.getKey() - base));
+                record.putFloat(temperatures + i * 4, e.getValue().temperature());
+                record.put(codes + i, e.getValue().code());
+                i++;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record.slice(payload, length));
+            record.putInt(0, length);
+            record.putInt(4, (int) crc.getValue());
+
+            write(record, writePosition);
+            indexRecord(writePosition, key, fetchedAtMillis);
+            writePosition += RECORD_HEADER + length;
+        }
+
+        private void write(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position());
+        }
+
+        private ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Nieoczekiwany koniec segmentu historii");
+            }
+            return buffer.flip();
+        }
+
+        // Mapowanie obejmuje zapisane rekordy; po dopisku zastępuje je dłuższe, a poprzednie zwalnia GC
+        private MappedByteBuffer view() throws IOException {
+            if (view == null || view.capacity() < writePosition) {
+                view = channel.map(FileChannel.MapMode.READ_ONLY, 0, writePosition);
+            }
+            return view;
+        }
+
+        // Zwraca przesunięcie UTC ostatniego pasującego rekordu (albo podane, gdy żaden nie pasował)
+        int collect(long key, long from, long to, TreeMap<Long, Point> points, int utcOffset) throws IOException {
+            List<Integer> positions = index.get(key);
+            if (positions == null) return utcOffset;
+            MappedByteBuffer buffer = view();
+            for (int position : positions) {
+                int payload = position + RECORD_HEADER;
+                int count = buffer.getInt(payload + 20);
+                long base = buffer.getLong(payload + 24);
+                int offsets = payload + PAYLOAD_FIXED;
+                int temperatures = offsets + count * 4;
+                int codes = temperatures + count * 4;
+                boolean matched = false;
+                for (int i = 0; i < count; i++) {
+                    long time = base + buffer.getInt(offsets + i * 4);
+                    if (time < from || time >= to) continue;
+                    // Rekordy są w kolejności zapisu, więc późniejsza prognoza nadpisuje wcześniejszą
+                    points.put(time, new Point(buffer.getFloat(temperatures + i * 4), buffer.get(codes + i)));
+                    matched = true;
+                }
+                if (matched) utcOffset = buffer.getInt(payload + 16);
+            }
+            return utcOffset;
+        }
+
+        void force() {
+            try {
+                channel.force(false);
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+
+        void close() {
+            view = null;
+            try {
+                channel.close();
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+    }
+}
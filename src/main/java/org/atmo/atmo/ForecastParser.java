@@ -0,0 +1,228 @@
+package org.atmo.atmo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Strumieniowe parsowanie odpowiedzi /v1/forecast z Open-Meteo.
+ * Interesujące kolumny trafiają od razu do {@link ForecastSeries}, reszta pól jest pomijana.
+ */
+public class ForecastParser {
+
+    private ForecastParser() {}
+
+    public static WeatherService.WeatherData parse(InputStream in, String cityName) throws IOException {
+        JsonPullParser parser = new JsonPullParser(in);
+        if (parser.next() != JsonPullParser.Token.START_OBJECT) throw new IOException("Oczekiwano obiektu JSON");
+        return parseLocation(parser, cityName);
+    }
+
+    // Dla wielu lokalizacji Open-Meteo zwraca tablicę obiektów w kolejności zapytania
+    public static List<WeatherService.WeatherData> parseBatch(InputStream in, List<String> cityNames) throws IOException {
+        JsonPullParser parser = new JsonPullParser(in);
+        List<WeatherService.WeatherData> results = new ArrayList<>(cityNames.size());
+        JsonPullParser.Token first = parser.next();
+        if (first == JsonPullParser.Token.START_OBJECT) {
+            results.add(parseLocation(parser, cityNames.isEmpty() ? "" : cityNames.get(0)));
+            return results;
+        }
+        expect(first, JsonPullParser.Token.START_ARRAY);
+        for (JsonPullParser.Token t = parser.next(); t != JsonPullParser.Token.END_ARRAY; t = parser.next()) {
+            expect(t, JsonPullParser.Token.START_OBJECT);
+            String name = results.size() < cityNames.size() ? cityNames.get(results.size()) : "";
+            results.add(parseLocation(parser, name));
+        }
+        return results;
+    }
+
+    // Parser stoi tuż za '{' obiektu lokalizacji; po powrocie stoi na odpowiadającym mu '}'
+    static WeatherService.WeatherData parseLocation(JsonPullParser parser, String cityName) throws IOException {
+        int utcOffsetSeconds = 0;
+        double currentTemp = Double.NaN;
+        int currentCode = -1;
+
+        Times hourlyTimes = Times.NONE;
+        float[] hourlyTemps = new float[0];
+        float[] hourlyPrecipitation = null;
+        float[] hourlyWind = null;
+        byte[] hourlyCodes = new byte[0];
+
+        Times dailyTimes = Times.NONE;
+        float[] dailyMax = new float[0];
+        float[] dailyMin = null;
+        float[] dailyPrecipitation = null;
+        float[] dailyWind = null;
+        byte[] dailyCodes = new byte[0];
+
+        while (parser.next() == JsonPullParser.Token.FIELD_NAME) {
+            if (parser.textEquals("utc_offset_seconds")) {
+                parser.next();
+                utcOffsetSeconds = parser.getInt();
+            } else if (parser.textEquals("current")) {
+                expect(parser.next(), JsonPullParser.Token.START_OBJECT);
+                while (parser.next() == JsonPullParser.Token.FIELD_NAME) {
+                    if (parser.textEquals("temperature_2m")) {
+                        parser.next();
+                        currentTemp = parser.getDouble();
+                    } else if (parser.textEquals("weather_code")) {
+                        parser.next();
+                        currentCode = parser.getInt();
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+            } else if (parser.textEquals("hourly")) {
+                expect(parser.next(), JsonPullParser.Token.START_OBJECT);
+                while (parser.next() == JsonPullParser.Token.FIELD_NAME) {
+                    if (parser.textEquals("time")) hourlyTimes = readTimes(parser, false);
+                    else if (parser.textEquals("temperature_2m")) hourlyTemps = readFloats(parser);
+                    else if (parser.textEquals("precipitation")) hourlyPrecipitation = readFloats(parser);
+                    else if (parser.textEquals("wind_speed_10m")) hourlyWind = readFloats(parser);
+                    else if (parser.textEquals("weather_code")) hourlyCodes = readCodes(parser);
+                    else parser.skipValue();
+                }
+            } else if (parser.textEquals("daily")) {
+                expect(parser.next(), JsonPullParser.Token.START_OBJECT);
+                while (parser.next() == JsonPullParser.Token.FIELD_NAME) {
+                    if (parser.textEquals("time")) dailyTimes = readTimes(parser, true);
+                    else if (parser.textEquals("temperature_2m_max")) dailyMax = readFloats(parser);
+                    else if (parser.textEquals("temperature_2m_min")) dailyMin = readFloats(parser);
+                    else if (parser.textEquals("precipitation_sum")) dailyPrecipitation = readFloats(parser);
+                    else if (parser.textEquals("wind_speed_10m_max")) dailyWind = readFloats(parser);
+                    else if (parser.textEquals("weather_code")) dailyCodes = readCodes(parser);
+                    else parser.skipValue();
+                }
+            } else {
+                parser.skipValue();
+            }
+        }
+        expect(parser.current(), JsonPullParser.Token.END_OBJECT);
+
+        long[] hourlyEpoch = hourlyTimes.toEpochSeconds(utcOffsetSeconds);
+        long[] dailyEpoch = dailyTimes.toEpochSeconds(utcOffsetSeconds);
+
+        int hourlyCount = Math.min(hourlyEpoch.length, Math.min(hourlyTemps.length, hourlyCodes.length));
+        ForecastSeries hourly = new ForecastSeries(hourlyEpoch, hourlyTemps, null,
+                column(hourlyPrecipitation, hourlyCount), column(hourlyWind, hourlyCount), hourlyCodes, utcOffsetSeconds);
+
+        int dailyCount = Math.min(dailyEpoch.length, Math.min(dailyMax.length, dailyCodes.length));
+        ForecastSeries daily = new ForecastSeries(dailyEpoch, dailyMax, column(dailyMin, dailyCount),
+                column(dailyPrecipitation, dailyCount), column(dailyWind, dailyCount), dailyCodes, utcOffsetSeconds);
+
+        return new WeatherService.WeatherData(cityName, currentTemp, WeatherCondition.fromCode(currentCode), hourly, daily);
+    }
+
+    static String dayName(int day) {
+        return switch (day) {
+            case 1 -> "Pon"; case 2 -> "Wt"; case 3 -> "Śr";
+            case 4 -> "Czw"; case 5 -> "Pt"; case 6 -> "Sob"; case 7 -> "Ndz";
+            default -> "";
+        };
+    }
+
+    /**
+     * Czasy z odpowiedzi: przy timeformat=unixtime to już sekundy UTC (dla dni - lokalna północ),
+     * w formacie ISO to czas lokalny lokalizacji, który trzeba przesunąć o utc_offset_seconds.
+     */
+    private record Times(long[] values, boolean local) {
+        static final Times NONE = new Times(new long[0], false);
+
+        long[] toEpochSeconds(int utcOffsetSeconds) {
+            if (local) {
+                for (int i = 0; i < values.length; i++) values[i] -= utcOffsetSeconds;
+            }
+            return values;
+        }
+    }
+
+    private static float[] column(float[] values, int count) {
+        return values != null && values.length >= count ? values : null;
+    }
+
+    private static void expect(JsonPullParser.Token actual, JsonPullParser.Token expected) throws IOException {
+        if (actual != expected) throw new IOException("Oczekiwano " + expected + ", otrzymano " + actual);
+    }
+
+    private static float[] readFloats(JsonPullParser parser) throws IOException {
+        expect(parser.next(), JsonPullParser.Token.START_ARRAY);
+        float[] values = new float[64];
+        int n = 0;
+        for (JsonPullParser.Token t = parser.next(); t != JsonPullParser.Token.END_ARRAY; t = parser.next()) {
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            values[n++] = t == JsonPullParser.Token.NULL ? Float.NaN : (float) parser.getDouble();
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    // Kody WMO mieszczą się w zakresie 0-99
+    private static byte[] readCodes(JsonPullParser parser) throws IOException {
+        expect(parser.next(), JsonPullParser.Token.START_ARRAY);
+        byte[] values = new byte[64];
+        int n = 0;
+        for (JsonPullParser.Token t = parser.next(); t != JsonPullParser.Token.END_ARRAY; t = parser.next()) {
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            values[n++] = t == JsonPullParser.Token.NULL ? -1 : (byte) parser.getInt();
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    private static Times readTimes(JsonPullParser parser, boolean dates) throws IOException {
+        expect(parser.next(), JsonPullParser.Token.START_ARRAY);
+        long[] values = new long[dates ? 16 : 64];
+        int n = 0;
+        boolean local = false;
+        for (JsonPullParser.Token t = parser.next(); t != JsonPullParser.Token.END_ARRAY; t = parser.next()) {
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            if (t == JsonPullParser.Token.NUMBER) {
+                values[n++] = parser.getLong();
+            } else {
+                expect(t, JsonPullParser.Token.STRING);
+                local = true;
+                // Dzień to początek doby lokalnej, w tych samych jednostkach co czas godzinowy
+                values[n++] = dates ? parseEpochDay(parser) * 86_400L : parseLocalDateTime(parser);
+            }
+        }
+        return new Times(Arrays.copyOf(values, n), local);
+    }
+
+    // "yyyy-MM-ddTHH:mm[:ss]" czytane prosto z bufora parsera, bez tworzenia Stringa
+    private static long parseLocalDateTime(JsonPullParser parser) throws IOException {
+        if (parser.textLength() < 16 || parser.textCharAt(10) != 'T') throw new IOException("Nieprawidłowy czas: " + parser.getText());
+        long seconds = parseEpochDay(parser) * 86_400L
+                + digits(parser, 11, 2) * 3600L
+                + digits(parser, 14, 2) * 60L;
+        if (parser.textLength() >= 19) seconds += digits(parser, 17, 2);
+        return seconds;
+    }
+
+    private static long parseEpochDay(JsonPullParser parser) throws IOException {
+        if (parser.textLength() < 10) throw new IOException("Nieprawidłowa data: " + parser.getText());
+        int year = digits(parser, 0, 4);
+        int month = digits(parser, 5, 2);
+        int day = digits(parser, 8, 2);
+        return epochDay(year, month, day);
+    }
+
+    private static int digits(JsonPullParser parser, int from, int count) throws IOException {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char ch = parser.textCharAt(i);
+            if (ch < '0' || ch > '9') throw new IOException("Nieprawidłowa data: " + parser.getText());
+            value = value * 10 + (ch - '0');
+        }
+        return value;
+    }
+
+    // Algorytm "days from civil" (H. Hinnant) - to samo co LocalDate.of(...).toEpochDay()
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+}
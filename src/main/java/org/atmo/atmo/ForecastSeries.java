@@ -0,0 +1,251 @@
+package org.atmo.atmo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Kolumnowa seria prognozy: czasy (sekundy epoki UTC), temperatury, kody WMO
+ * i opcjonalne kolumny dodatkowe. Etykiety są formatowane dopiero przy renderowaniu,
+ * a {@link #slice(int, int)} zwraca widok na tych samych tablicach.
+ */
+public final class ForecastSeries {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HAS_MIN = 1;
+    private static final int HAS_PRECIPITATION = 2;
+    private static final int HAS_WIND = 4;
+    private static final int REGULAR_STEP = 8;
+
+    public static final ForecastSeries EMPTY = new ForecastSeries(new long[0], new float[0], null, null, null, new byte[0], 0);
+
+    private final long[] times;
+    private final float[] temperatures;
+    private final float[] temperaturesMin;
+    private final float[] precipitation;
+    private final float[] windSpeed;
+    private final byte[] weatherCodes;
+    private final int utcOffsetSeconds;
+    private final int offset;
+    private final int length;
+
+    public ForecastSeries(long[] times, float[] temperatures, float[] temperaturesMin,
+                          float[] precipitation, float[] windSpeed, byte[] weatherCodes, int utcOffsetSeconds) {
+        this(times, temperatures, temperaturesMin, precipitation, windSpeed, weatherCodes, utcOffsetSeconds, 0,
+                Math.min(times.length, Math.min(temperatures.length, weatherCodes.length)));
+    }
+
+    private ForecastSeries(long[] times, float[] temperatures, float[] temperaturesMin,
+                           float[] precipitation, float[] windSpeed, byte[] weatherCodes,
+                           int utcOffsetSeconds, int offset, int length) {
+        this.times = times;
+        this.temperatures = temperatures;
+        this.temperaturesMin = temperaturesMin;
+        this.precipitation = precipitation;
+        this.windSpeed = windSpeed;
+        this.weatherCodes = weatherCodes;
+        this.utcOffsetSeconds = utcOffsetSeconds;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int size() { return length; }
+
+    public boolean isEmpty() { return length == 0; }
+
+    public int utcOffsetSeconds() { return utcOffsetSeconds; }
+
+    public long time(int i) { return times[index(i)]; }
+
+    public float temperature(int i) { return temperatures[index(i)]; }
+
+    public float temperatureMin(int i) {
+        return temperaturesMin == null ? Float.NaN : temperaturesMin[index(i)];
+    }
+
+    public float precipitation(int i) {
+        return precipitation == null ? Float.NaN : precipitation[index(i)];
+    }
+
+    public float windSpeed(int i) {
+        return windSpeed == null ? Float.NaN : windSpeed[index(i)];
+    }
+
+    public int weatherCode(int i) { return weatherCodes[index(i)]; }
+
+    public WeatherCondition condition(int i) { return WeatherCondition.fromCode(weatherCodes[index(i)]); }
+
+    public ForecastSeries slice(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("slice(" + from + ", " + to + ") dla rozmiaru " + length);
+        }
+        return new ForecastSeries(times, temperatures, temperaturesMin, precipitation, windSpeed, weatherCodes,
+                utcOffsetSeconds, offset + from, to - from);
+    }
+
+    // Indeks pierwszego punktu nie wcześniejszego niż epochSecond (size(), gdy takiego nie ma)
+    // Czasy są rosnące - wyszukiwanie binarne
+    public int indexAtOrAfter(long epochSecond) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[offset + mid] < epochSecond) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    public String hourLabel(int i) {
+        int secondOfDay = (int) Math.floorMod(time(i) + utcOffsetSeconds, 86_400L);
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        return new String(new char[] {
+                (char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+                (char) ('0' + minute / 10), (char) ('0' + minute % 10)
+        });
+    }
+
+    public String dayLabel(int i) {
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(time(i) + utcOffsetSeconds, 86_400L));
+        int day = date.getDayOfMonth();
+        int month = date.getMonthValue();
+        return ForecastParser.dayName(date.getDayOfWeek().getValue()) + " "
+                + (day < 10 ? "0" : "") + day + "." + (month < 10 ? "0" : "") + month;
+    }
+
+    /**
+     * Zakres indeksów {od, do} (włącznie), w którym seria różni się od {@code previous}
+     * temperaturą, opadem albo kodem pogody; pusta tablica, gdy nic się nie zmieniło.
+     * Null, gdy osie czasu są różne - wtedy porównanie punkt po punkcie nie ma sensu.
+     */
+    public int[] changedRange(ForecastSeries previous) {
+        if (previous == null || previous.length != length || previous.utcOffsetSeconds != utcOffsetSeconds
+                || !Arrays.equals(times, offset, offset + length, previous.times, previous.offset, previous.offset + length)) {
+            return null;
+        }
+        int from = -1;
+        int to = -1;
+        for (int i = 0; i < length; i++) {
+            if (Float.compare(temperature(i), previous.temperature(i)) == 0
+                    && Float.compare(precipitation(i), previous.precipitation(i)) == 0
+                    && weatherCode(i) == previous.weatherCode(i)) continue;
+            if (from < 0) from = i;
+            to = i;
+        }
+        return from < 0 ? new int[0] : new int[] {from, to};
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        long step = regularStep();
+        int flags = (temperaturesMin != null ? HAS_MIN : 0)
+                | (precipitation != null ? HAS_PRECIPITATION : 0)
+                | (windSpeed != null ? HAS_WIND : 0)
+                | (step > 0 ? REGULAR_STEP : 0);
+
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(flags);
+        out.writeInt(utcOffsetSeconds);
+        out.writeInt(length);
+        if (length == 0) return;
+
+        // Serie godzinowe i dzienne mają stały krok - wystarczy początek i krok
+        if (step > 0) {
+            out.writeLong(time(0));
+            out.writeInt((int) step);
+        } else {
+            for (int i = 0; i < length; i++) out.writeLong(time(i));
+        }
+        writeFloats(out, temperatures);
+        if (temperaturesMin != null) writeFloats(out, temperaturesMin);
+        if (precipitation != null) writeFloats(out, precipitation);
+        if (windSpeed != null) writeFloats(out, windSpeed);
+        out.write(weatherCodes, offset, length);
+    }
+
+    public static ForecastSeries readFrom(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) throw new IOException("Nieobsługiwana wersja serii: " + version);
+        int flags = in.readByte();
+        int utcOffsetSeconds = in.readInt();
+        int length = in.readInt();
+        if (length == 0) return new ForecastSeries(new long[0], new float[0], null, null, null, new byte[0], utcOffsetSeconds);
+
+        long[] times = new long[length];
+        if ((flags & REGULAR_STEP) != 0) {
+            long start = in.readLong();
+            int step = in.readInt();
+            for (int i = 0; i < length; i++) times[i] = start + (long) i * step;
+        } else {
+            for (int i = 0; i < length; i++) times[i] = in.readLong();
+        }
+        float[] temperatures = readFloats(in, length);
+        float[] temperaturesMin = (flags & HAS_MIN) != 0 ? readFloats(in, length) : null;
+        float[] precipitation = (flags & HAS_PRECIPITATION) != 0 ? readFloats(in, length) : null;
+        float[] windSpeed = (flags & HAS_WIND) != 0 ? readFloats(in, length) : null;
+        byte[] codes = new byte[length];
+        in.readFully(codes);
+        return new ForecastSeries(times, temperatures, temperaturesMin, precipitation, windSpeed, codes, utcOffsetSeconds);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastSeries other)) return false;
+        return utcOffsetSeconds == other.utcOffsetSeconds
+                && Arrays.equals(times, offset, offset + length, other.times, other.offset, other.offset + other.length)
+                && Arrays.equals(temperatures, offset, offset + length, other.temperatures, other.offset, other.offset + other.length)
+                && Arrays.equals(weatherCodes, offset, offset + length, other.weatherCodes, other.offset, other.offset + other.length)
+                && columnEquals(temperaturesMin, other, other.temperaturesMin)
+                && columnEquals(precipitation, other, other.precipitation)
+                && columnEquals(windSpeed, other, other.windSpeed);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = utcOffsetSeconds;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + Long.hashCode(time(i));
+            h = 31 * h + Float.hashCode(temperature(i));
+            h = 31 * h + weatherCode(i);
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastSeries[size=" + length + ", utcOffset=" + utcOffsetSeconds + "]";
+    }
+
+    private boolean columnEquals(float[] mine, ForecastSeries other, float[] theirs) {
+        if (mine == null || theirs == null) return mine == theirs;
+        return Arrays.equals(mine, offset, offset + length, theirs, other.offset, other.offset + other.length);
+    }
+
+    private long regularStep() {
+        if (length < 2) return length == 1 ? 3600 : 0;
+        long step = time(1) - time(0);
+        if (step <= 0 || step > Integer.MAX_VALUE) return 0;
+        for (int i = 2; i < length; i++) {
+            if (time(i) - time(i - 1) != step) return 0;
+        }
+        return step;
+    }
+
+    private void writeFloats(DataOutput out, float[] column) throws IOException {
+        for (int i = offset; i < offset + length; i++) out.writeFloat(column[i]);
+    }
+
+    private static float[] readFloats(DataInput in, int length) throws IOException {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) values[i] = in.readFloat();
+        return values;
+    }
+
+    private int index(int i) {
+        if (i < 0 || i >= length) throw new IndexOutOfBoundsException(i);
+        return offset + i;
+    }
+}
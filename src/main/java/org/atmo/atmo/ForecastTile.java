@@ -0,0 +1,45 @@
+package org.atmo.atmo;
+
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.VBox;
+
+/**
+ * Kafelek prognozy (godzina/dzień, ikona, temperatura) używany wielokrotnie.
+ * update() dotyka tylko tych węzłów, których wartość faktycznie się zmieniła.
+ */
+public class ForecastTile extends VBox {
+
+    private final Label timeLabel = new Label();
+    private final ImageView iconView = new ImageView();
+    private final Label tempLabel = new Label();
+
+    public ForecastTile(int iconSize) {
+        super(5);
+        getStyleClass().add("forecast-tile");
+        timeLabel.getStyleClass().add("forecast-time");
+        tempLabel.getStyleClass().add("forecast-temp");
+        iconView.setFitWidth(iconSize);
+        iconView.setFitHeight(iconSize);
+        getChildren().addAll(timeLabel, iconView, tempLabel);
+    }
+
+    /** Zwraca true, jeśli cokolwiek zostało zmienione. */
+    public boolean update(String time, Image icon, String temp) {
+        boolean changed = setText(timeLabel, time);
+        if (iconView.getImage() != icon) {
+            iconView.setImage(icon);
+            changed = true;
+        }
+        changed |= setText(tempLabel, temp);
+        return changed;
+    }
+
+    // Property porównuje referencje, więc równy tekst i tak unieważniłby layout
+    static boolean setText(Label label, String text) {
+        if (text.equals(label.getText())) return false;
+        label.setText(text);
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package org.atmo.atmo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Posortowany indeks miast zbudowany offline przez {@link GazetteerBuilder}.
+ * Plik jest mapowany do pamięci, więc nic poza nagłówkiem nie trafia na stertę.
+ *
+ * Układ pliku: nagłówek (magic, wersja, liczba wpisów, offset puli napisów),
+ * tablica wpisów po {@value #ENTRY_SIZE} bajtów (offset klucza, lat, lon, offset nazwy)
+ * oraz pula napisów w UTF-8 poprzedzonych długością (unsigned short).
+ */
+public class Gazetteer {
+
+    static final int MAGIC = 0x4154475A; // "ATGZ"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+
+    private static final String DEFAULT_PATH = "gazetteer.idx";
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private static final Gazetteer EMPTY = new Gazetteer(null, 0, 0);
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int poolOffset;
+
+    private Gazetteer(ByteBuffer buffer, int count, int poolOffset) {
+        this.buffer = buffer;
+        this.count = count;
+        this.poolOffset = poolOffset;
+    }
+
+    public static Gazetteer empty() { return EMPTY; }
+
+    public static Gazetteer loadDefault() {
+        Path path = Paths.get(System.getProperty("atmo.gazetteer", DEFAULT_PATH));
+        if (!Files.exists(path)) return EMPTY;
+        try {
+            return open(path);
+        } catch (Exception e) {
+            System.err.println("Nie udało się wczytać indeksu miast: " + e.getMessage());
+            return EMPTY;
+        }
+    }
+
+    public static Gazetteer open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Nieprawidłowy format indeksu: " + path);
+            }
+            return new Gazetteer(buffer, buffer.getInt(8), buffer.getInt(12));
+        }
+    }
+
+    public static String normalize(String name) {
+        String s = name.replace('ł', 'l').replace('Ł', 'L')
+                .replace('ø', 'o').replace('Ø', 'O')
+                .replace('đ', 'd').replace('Đ', 'D')
+                .replace("ß", "ss").replace("æ", "ae").replace("Æ", "AE");
+        s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return SPACES.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    public int size() { return count; }
+
+    public WeatherService.Coordinates lookup(String cityName) {
+        List<WeatherService.Coordinates> results = lookup(cityName, 1);
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    // Wpisy o tym samym kluczu są posortowane malejąco po populacji
+    public List<WeatherService.Coordinates> lookup(String cityName, int limit) {
+        List<WeatherService.Coordinates> results = new ArrayList<>();
+        if (count == 0 || cityName == null) return results;
+
+        byte[] key = normalize(cityName).getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0) return results;
+
+        for (int i = lowerBound(key); i < count && results.size() < limit; i++) {
+            if (compareKey(i, key) != 0) break;
+            results.add(entry(i));
+        }
+        return results;
+    }
+
+    /**
+     * Wpisy, których klucz zaczyna się od {@code prefix} - w kolejności indeksu,
+     * więc dokładne trafienie (najkrótszy klucz) jest pierwsze. To samo miejsce zapisane pod kilkoma
+     * kluczami (nazwa i nazwa ASCII) zwracamy raz; różne miejscowości o tej samej nazwie zostają.
+     */
+    public List<WeatherService.Coordinates> search(String prefix, int limit) {
+        List<WeatherService.Coordinates> results = new ArrayList<>();
+        if (count == 0 || prefix == null) return results;
+
+        byte[] key = normalize(prefix).getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0) return results;
+
+        Set<WeatherService.Coordinates> seen = new HashSet<>();
+        for (int i = lowerBound(key); i < count && results.size() < limit; i++) {
+            if (!hasPrefix(i, key)) break;
+            WeatherService.Coordinates entry = entry(i);
+            if (seen.add(entry)) results.add(entry);
+        }
+        return results;
+    }
+
+    private int lowerBound(byte[] key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKey(mid, key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int compareKey(int index, byte[] key) {
+        int offset = poolOffset + buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        offset += 2;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.toUnsignedInt(buffer.get(offset + i)) - Byte.toUnsignedInt(key[i]);
+            if (cmp != 0) return cmp;
+        }
+        return length - key.length;
+    }
+
+    private boolean hasPrefix(int index, byte[] prefix) {
+        int offset = poolOffset + buffer.getInt(HEADER_SIZE + index * ENTRY_SIZE);
+        if (Short.toUnsignedInt(buffer.getShort(offset)) < prefix.length) return false;
+        offset += 2;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private WeatherService.Coordinates entry(int index) {
+        int base = HEADER_SIZE + index * ENTRY_SIZE;
+        double lat = Double.parseDouble(Float.toString(buffer.getFloat(base + 4)));
+        double lon = Double.parseDouble(Float.toString(buffer.getFloat(base + 8)));
+        return new WeatherService.Coordinates(lat, lon, readString(poolOffset + buffer.getInt(base + 12)));
+    }
+
+    private String readString(int offset) {
+        int length = Short.toUnsignedInt(buffer.getShort(offset));
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
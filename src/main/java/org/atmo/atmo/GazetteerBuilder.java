@@ -0,0 +1,135 @@
+package org.atmo.atmo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Buduje plik indeksu dla {@link Gazetteer} ze zrzutu miast w formacie GeoNames
+ * (np. cities500.txt). Wynik zależy wyłącznie od pliku wejściowego.
+ *
+ * Użycie: GazetteerBuilder &lt;cities.txt&gt; [gazetteer.idx]
+ */
+public class GazetteerBuilder {
+
+    private static final Locale DISPLAY_LOCALE = Locale.of("pl");
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private record Row(byte[] key, float latitude, float longitude, String displayName, long population, long geonameId) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Użycie: GazetteerBuilder <cities.txt> [gazetteer.idx]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args.length > 1 ? args[1] : "gazetteer.idx");
+
+        int count = build(input, output);
+        System.out.println("Zapisano " + count + " wpisów do " + output);
+    }
+
+    public static int build(Path input, Path output) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+                parseLine(line, rows);
+            }
+        }
+
+        rows.sort(Comparator.<Row, byte[]>comparing(Row::key, Arrays::compareUnsigned)
+                .thenComparing(Comparator.comparingLong(Row::population).reversed())
+                .thenComparingLong(Row::geonameId));
+
+        Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            write(rows, out);
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows.size();
+    }
+
+    private static void parseLine(String line, List<Row> rows) {
+        String[] cols = line.split("\t", -1);
+        if (cols.length < 15) return;
+
+        String name = cols[1];
+        float latitude = Float.parseFloat(cols[4]);
+        float longitude = Float.parseFloat(cols[5]);
+        String countryCode = cols[8];
+        long population = cols[14].isEmpty() ? 0 : Long.parseLong(cols[14]);
+        long geonameId = Long.parseLong(cols[0]);
+
+        String country = countryCode.isEmpty() ? "" : Locale.of("", countryCode).getDisplayCountry(DISPLAY_LOCALE);
+        String displayName = country.isEmpty() ? name : name + " (" + country + ")";
+
+        // Nazwa i jej wersja ASCII mogą dać różne klucze (np. "Kraków" / "Krakow" dają ten sam)
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(Gazetteer.normalize(name));
+        keys.add(Gazetteer.normalize(cols[2]));
+        for (String key : keys) {
+            if (key.isEmpty()) continue;
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (keyBytes.length > MAX_STRING_BYTES) continue;
+            rows.add(new Row(keyBytes, latitude, longitude, displayName, population, geonameId));
+        }
+    }
+
+    private static void write(List<Row> rows, OutputStream out) throws IOException {
+        ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        DataOutputStream pool = new DataOutputStream(poolBytes);
+        Map<String, Integer> names = new HashMap<>();
+
+        int[] keyOffsets = new int[rows.size()];
+        int[] nameOffsets = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            keyOffsets[i] = pool.size();
+            pool.writeShort(row.key().length);
+            pool.write(row.key());
+
+            Integer nameOffset = names.get(row.displayName());
+            if (nameOffset == null) {
+                nameOffset = pool.size();
+                byte[] nameBytes = row.displayName().getBytes(StandardCharsets.UTF_8);
+                pool.writeShort(nameBytes.length);
+                pool.write(nameBytes);
+                names.put(row.displayName(), nameOffset);
+            }
+            nameOffsets[i] = nameOffset;
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(Gazetteer.MAGIC);
+        data.writeInt(Gazetteer.VERSION);
+        data.writeInt(rows.size());
+        data.writeInt(Gazetteer.HEADER_SIZE + rows.size() * Gazetteer.ENTRY_SIZE);
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            data.writeInt(keyOffsets[i]);
+            data.writeFloat(row.latitude());
+            data.writeFloat(row.longitude());
+            data.writeInt(nameOffsets[i]);
+        }
+        poolBytes.writeTo(data);
+        data.flush();
+    }
+}
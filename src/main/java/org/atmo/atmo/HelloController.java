@@ -1,15 +1,45 @@
 package org.atmo.atmo;
 
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
+import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
+import javafx.scene.input.InputEvent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
-import java.util.Objects;
+import javafx.scene.paint.Color;
+import javafx.stage.Screen;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class HelloController {
 
@@ -25,50 +55,284 @@ public class HelloController {
     @FXML private Label descriptionLabel;
     @FXML private Label highLowLabel;
 
-    @FXML private HBox hourlyContainer;
+    @FXML private ForecastChart hourlyChart;
     @FXML private HBox dailyContainer;
+    @FXML private Label statsOverlay;
+
+    private static final int MAX_IN_FLIGHT_LOADS = 2;
+    private static final int TILE_ICON_SIZE = 40;
+    private static final boolean TIMING = Boolean.getBoolean("atmo.timing");
+    private static final Duration HISTORY_RETENTION = Duration.ofDays(3 * 365);
+    private static final Duration HISTORY_MAINTENANCE = Duration.ofHours(1);
+    private static final Color PLACEHOLDER_BACKGROUND = Color.web("#6f8fb0");
+    private static final Map<String, String> THEMES = new LinkedHashMap<>();
+    static {
+        THEMES.put("Chmurki", "chmurki.jpg");
+        THEMES.put("Chmurki 2", "chmurki2.jpg");
+        THEMES.put("Chmurki 3", "chmurki3.jpg");
+        THEMES.put("Chmurki 4", "chmurki4.jpg");
+    }
 
     private final WeatherService weatherService = new WeatherService();
+    private final LatestWinsLoader weatherLoader = new LatestWinsLoader(MAX_IN_FLIGHT_LOADS, Platform::runLater);
+    private final FavoritesRefreshScheduler favoritesRefresher = new FavoritesRefreshScheduler(weatherService);
+    private final ForecastHistoryStore history = openHistory();
+    private final TypeAheadSearch typeAhead =
+            new TypeAheadSearch(weatherService, TypeAheadSearch.DEFAULT_DEBOUNCE, Platform::runLater, this::showSuggestions);
+    private final ContextMenu suggestions = new ContextMenu();
+    private FavoritesDashboard dashboard;
+    private Stage dashboardStage;
+    private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "forecast-clock");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> nextTick;
+    private ScheduledFuture<?> overlayRefresh;
+    private WeatherService.WeatherData currentData;
     private String currentCityRawName = "";
+    private String currentQuery = "";
+    private Runnable startupListener;
+    private boolean deferredInitScheduled;
+    private boolean firstPaintReported;
+    private String selectedTheme;
+    private Image pendingBackground;
+    private ChangeListener<Number> pendingBackgroundListener;
+    private boolean settingCityText;
+    private volatile String currentLocationName = "";
 
     @FXML
     private void initialize() {
+        // Do historii trafiają tylko prognozy faktycznie pobrane z sieci, z czasem ich pobrania
+        weatherService.setOnFetched(this::recordHistory);
+        weatherService.setOnBackgroundRefresh(data -> {
+            Platform.runLater(() -> {
+                if (data.city().equals(currentLocationName)) updateUI(data);
+            });
+        });
+        favoritesRefresher.setOnUpdate(data -> {
+            Platform.runLater(() -> {
+                if (data.city().equals(currentLocationName)) updateUI(data);
+            });
+        });
+
+        if (rootPane != null) {
+            rootPane.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+                if (e.getCode() == KeyCode.F3) toggleStatsOverlay();
+            });
+        }
+
         if (themeSelector != null) {
-            themeSelector.getItems().addAll("Chmurki", "Chmurki 2", "Chmurki 3", "Chmurki 4");
+            themeSelector.getItems().addAll(THEMES.keySet());
             themeSelector.setValue("Chmurki");
 
             themeSelector.setOnAction(e -> changeTheme(themeSelector.getValue()));
         }
 
-        Platform.runLater(() -> {
-            if (rootPane != null) {
-                changeTheme("Chmurki");
-                System.out.println("Tło powinno zostać nałożone.");
-            }
-        });
+        // Do czasu zdekodowania pierwszego tła okno ma jednolity kolor zamiast białego
+        if (rootPane != null) rootPane.setBackground(new Background(new BackgroundFill(PLACEHOLDER_BACKGROUND, null, null)));
+        Platform.runLater(() -> changeTheme("Chmurki"));
+
+        if (cityInput != null) {
+            cityInput.textProperty().addListener((obs, oldText, text) -> {
+                if (!settingCityText) typeAhead.onInput(text);
+            });
+        }
 
-        refreshFavoritesList();
         favoritesSelector.setOnAction(e -> {
             String selected = favoritesSelector.getValue();
             if (selected != null && !selected.isEmpty()) loadWeatherDataForCity(selected);
         });
 
-        loadWeatherDataForCity("Szczecin");
+        // Ostatni stan rysujemy od razu, więc pierwsza klatka ma już dane - sieć tylko je odświeża
+        StartupSnapshot snapshot = StartupSnapshot.load(StartupSnapshot.DEFAULT_FILE);
+        if (snapshot != null) {
+            restoreSnapshot(snapshot);
+            loadWeatherDataForCity(snapshot.query());
+        } else {
+            refreshFavoritesList();
+            loadWeatherDataForCity("Szczecin");
+        }
+    }
+
+    /**
+     * Mierzy czas od startu procesu do pierwszej klatki z danymi pogodowymi,
+     * a po pierwszym pulsie uruchamia inicjalizację niepotrzebną do narysowania okna.
+     */
+    public void watchStartup(Scene scene) {
+        startupListener = () -> {
+            if (!deferredInitScheduled) {
+                deferredInitScheduled = true;
+                Platform.runLater(this::deferredInit);
+            }
+            if (currentData == null || firstPaintReported) return;
+            firstPaintReported = true;
+            reportFirstPaint();
+            // Usuwamy po pulsie, nie w trakcie iteracji JavaFX po słuchaczach
+            Platform.runLater(() -> scene.removePostLayoutPulseListener(startupListener));
+        };
+        scene.addPostLayoutPulseListener(startupListener);
     }
 
+    /**
+     * Aktywność użytkownika dla odświeżania ulubionych: każde wejście w oknie (mysz, klawiatura, przewijanie)
+     * i odzyskanie fokusu. Samo wybieranie ulubionych nie wystarcza - ktoś może tylko czytać ekran główny.
+     */
+    public void watchActivity(Window window) {
+        if (window.getScene() != null) window.getScene().addEventFilter(InputEvent.ANY, e -> favoritesRefresher.touch());
+        window.focusedProperty().addListener((obs, wasFocused, focused) -> {
+            if (focused) favoritesRefresher.touch();
+        });
+    }
+
+    // Dekodowanie pozostałych ikon, odświeżanie ulubionych i rozgrzewka połączeń mogą poczekać na pierwszą klatkę
+    private void deferredInit() {
+        if (clock.isShutdown()) return;
+        IconCache.getInstance().preload(TILE_ICON_SIZE);
+        favoritesRefresher.start();
+        if (history != null) {
+            clock.scheduleWithFixedDelay(this::maintainHistory, 30, HISTORY_MAINTENANCE.toSeconds(), TimeUnit.SECONDS);
+        }
+        weatherService.warmUp();
+        refreshFavoritesList();
+    }
+
+    private void reportFirstPaint() {
+        Instant processStart = ProcessHandle.current().info().startInstant().orElse(null);
+        if (processStart == null) return;
+        long nanos = Duration.between(processStart, Instant.now()).toNanos();
+        Metrics.getInstance().record("startup.firstPaint", nanos);
+        if (TIMING) System.out.printf("Pierwsza klatka z danymi po %d ms od startu procesu%n", nanos / 1_000_000);
+    }
+
+    private void restoreSnapshot(StartupSnapshot snapshot) {
+        weatherService.rememberCoordinates(snapshot.query(), snapshot.coordinates());
+        currentQuery = snapshot.query();
+        currentLocationName = snapshot.data().city();
+        currentCityRawName = rawName(snapshot.data().city());
+        updateUI(snapshot.data());
+
+        if (favoritesSelector != null) favoritesSelector.getItems().setAll(snapshot.favorites());
+        if (starIcon != null) {
+            String key = Gazetteer.normalize(currentCityRawName);
+            boolean favorite = snapshot.favorites().stream().anyMatch(city -> Gazetteer.normalize(city).equals(key));
+            starIcon.setText(favorite ? "★" : "☆");
+        }
+    }
+
+    private void saveSnapshot() {
+        WeatherService.WeatherData data = currentData;
+        if (data == null || currentQuery.isEmpty()) return;
+        try {
+            new StartupSnapshot(currentQuery, weatherService.cachedCoordinates(currentQuery), data,
+                    FavoritesManager.getInstance().getFavorites(), System.currentTimeMillis())
+                    .save(StartupSnapshot.DEFAULT_FILE);
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    public void setBackgrounded(boolean backgrounded) {
+        favoritesRefresher.setBackgrounded(backgrounded);
+    }
+
+    public void shutdown() {
+        favoritesRefresher.stop();
+        typeAhead.cancel();
+        if (dashboard != null) dashboard.close();
+        weatherLoader.cancel();
+        clock.shutdownNow();
+        FavoritesManager.getInstance().flush();
+        weatherService.getForecastCache().flush();
+        saveSnapshot();
+        if (history != null) history.close();
+    }
+
+    // Historię zbieramy tylko dla ulubionych; zapis idzie na wątek zegara, poza wątek FX
+    private void recordHistory(WeatherService.WeatherData data, long fetchedAt) {
+        if (history == null || !FavoritesManager.getInstance().isFavorite(rawName(data.city()))) return;
+        try {
+            clock.execute(() -> {
+                try {
+                    history.append(data.city(), data.hourly(), fetchedAt);
+                } catch (IOException e) { e.printStackTrace(); }
+            });
+        } catch (RejectedExecutionException e) {
+            // Aplikacja się zamyka
+        }
+    }
+
+    private void maintainHistory() {
+        try {
+            int removed = history.retain(HISTORY_RETENTION, Instant.now());
+            int compacted = history.compact();
+            Metrics.getInstance().add("history.removed", removed);
+            Metrics.getInstance().add("history.compacted", compacted);
+            if (TIMING && removed + compacted > 0) {
+                System.out.println("Historia: usunięto " + removed + ", skompaktowano " + compacted + " segmentów");
+            }
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    private static ForecastHistoryStore openHistory() {
+        try {
+            return ForecastHistoryStore.openDefault();
+        } catch (IOException e) {
+            System.err.println("Historia prognoz niedostępna: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tło ustawiamy z kodu, a nie klasą CSS: obraz jest dekodowany w tle do rozmiaru okna,
+     * a do czasu jego gotowości zostaje poprzednie tło - przełączenie nie blokuje wątku FX.
+     */
     private void changeTheme(String themeName) {
-        if (rootPane == null) return;
+        if (rootPane == null || !THEMES.containsKey(themeName)) return;
+        selectedTheme = themeName;
+        Image image = BackgroundCache.getInstance().get(THEMES.get(themeName), backgroundWidth());
+        if (image == null) return;
+
+        // Obraz poprzednio wybranego motywu może jeszcze się dekodować - jego słuchacz nie jest już potrzebny
+        clearPendingBackground();
+        if (image.getProgress() >= 1) {
+            applyBackground(themeName, image);
+            return;
+        }
+        pendingBackground = image;
+        pendingBackgroundListener = (obs, oldProgress, progress) -> {
+            if (progress.doubleValue() < 1) return;
+            clearPendingBackground();
+            applyBackground(themeName, image);
+        };
+        image.progressProperty().addListener(pendingBackgroundListener);
+    }
 
-        rootPane.getStyleClass().removeAll("theme-clouds", "theme-clouds2", "theme-clouds3", "theme-cr");
+    private void clearPendingBackground() {
+        if (pendingBackground != null) pendingBackground.progressProperty().removeListener(pendingBackgroundListener);
+        pendingBackground = null;
+        pendingBackgroundListener = null;
+    }
 
-        switch (themeName) {
-            case "Chmurki"   -> rootPane.getStyleClass().add("theme-clouds");
-            case "Chmurki 2" -> rootPane.getStyleClass().add("theme-clouds2");
-            case "Chmurki 3" -> rootPane.getStyleClass().add("theme-clouds3");
-            case "Chmurki 4" -> rootPane.getStyleClass().add("theme-cr");
+    private void applyBackground(String themeName, Image image) {
+        if (!themeName.equals(selectedTheme)) return;
+        if (image.isError()) {
+            System.err.println("Nie udało się zdekodować tła motywu " + themeName);
+            return;
         }
+        rootPane.setBackground(new Background(new BackgroundImage(image, BackgroundRepeat.NO_REPEAT,
+                BackgroundRepeat.NO_REPEAT, BackgroundPosition.CENTER,
+                new BackgroundSize(1, 1, true, true, false, true))));
+
+        // Następny motyw z listy to najbardziej prawdopodobny kolejny wybór
+        List<String> names = new ArrayList<>(THEMES.keySet());
+        String next = names.get((names.indexOf(themeName) + 1) % names.size());
+        BackgroundCache.getInstance().preload(THEMES.get(next), backgroundWidth());
+    }
 
-        System.out.println("Aktualny styl: " + rootPane.getStyleClass());
+    // Tła są węższe niż okno (9:16), więc skalowanie do szerokości wystarcza, by "cover" pokrył całą wysokość
+    private int backgroundWidth() {
+        Window window = rootPane.getScene() != null ? rootPane.getScene().getWindow() : null;
+        double scale = window != null ? window.getOutputScaleX() : Screen.getPrimary().getOutputScaleX();
+        return (int) Math.ceil(rootPane.getPrefWidth() * scale);
     }
 
     private void refreshFavoritesList() {
@@ -77,9 +341,35 @@ public class HelloController {
                 favoritesSelector.getItems().clear();
                 favoritesSelector.getItems().addAll(FavoritesManager.getInstance().getFavorites());
             }
+            if (dashboard != null) dashboard.setFavorites(FavoritesManager.getInstance().getFavorites());
         });
     }
 
+    // Panel porównania w osobnym oknie; tworzony przy pierwszym otwarciu, a po zamknięciu nie odświeża niczego
+    @FXML
+    private void handleShowDashboard() {
+        if (dashboardStage == null) {
+            dashboard = new FavoritesDashboard(weatherService, clock);
+            dashboard.setOnOpen(city -> {
+                loadWeatherDataForCity(city);
+                if (rootPane.getScene() != null && rootPane.getScene().getWindow() instanceof Stage main) main.toFront();
+            });
+
+            Scene scene = new Scene(dashboard, 450, 735);
+            if (rootPane.getScene() != null) scene.getStylesheets().addAll(rootPane.getScene().getStylesheets());
+            dashboardStage = new Stage();
+            dashboardStage.setTitle("Atmo - porównanie");
+            if (rootPane.getScene() != null) dashboardStage.initOwner(rootPane.getScene().getWindow());
+            dashboardStage.setScene(scene);
+            watchActivity(dashboardStage);
+            dashboardStage.setOnShown(e -> dashboard.start());
+            dashboardStage.setOnHidden(e -> dashboard.stop());
+        }
+        dashboard.setFavorites(FavoritesManager.getInstance().getFavorites());
+        dashboardStage.show();
+        dashboardStage.toFront();
+    }
+
     private void updateStarIcon(String city) {
         if (starIcon != null) {
             starIcon.setText(FavoritesManager.getInstance().isFavorite(city) ? "★" : "☆");
@@ -100,87 +390,176 @@ public class HelloController {
 
     @FXML
     private void handleSearch() {
+        typeAhead.cancel();
+        suggestions.hide();
         String cityName = cityInput.getText();
         if (cityName != null && !cityName.trim().isEmpty()) loadWeatherDataForCity(cityName);
     }
 
-    private void loadWeatherDataForCity(String cityName) {
-        Platform.runLater(() -> { if (starIcon != null) starIcon.setText("☆"); });
-
-        new Thread(() -> {
-            try {
-                WeatherService.Coordinates coords = weatherService.getCoordinatesForCity(cityName);
-                if (coords == null) {
-                    Platform.runLater(() -> {
-                        cityNameLabel.setText("Nie znaleziono");
-                    });
-                    return;
-                }
-
-                WeatherService.WeatherData data = weatherService.getWeatherData(
-                        coords.locationName(),
-                        String.valueOf(coords.latitude()),
-                        String.valueOf(coords.longitude())
-                );
-
-                Platform.runLater(() -> {
-                    this.currentCityRawName = rawName;
-                    updateUI(data);
-                    updateStarIcon(rawName);
-                });
-            } catch (Exception e) { e.printStackTrace(); }
-        }).start();
+    // Lista podpowiedzi pod polem wyszukiwania; elementy podmieniamy zamiast tworzyć nowe menu
+    private void showSuggestions(List<WeatherService.Place> places) {
+        if (cityInput == null) return;
+        if (places.isEmpty()) {
+            suggestions.hide();
+            return;
+        }
+        List<MenuItem> items = new ArrayList<>(places.size());
+        for (WeatherService.Place place : places) {
+            MenuItem item = new MenuItem(place.label());
+            item.setOnAction(e -> selectPlace(place));
+            items.add(item);
+        }
+        suggestions.getItems().setAll(items);
+        if (!suggestions.isShowing()) suggestions.show(cityInput, Side.BOTTOM, 0, 0);
     }
 
-    private void updateUI(WeatherService.WeatherData data) {
-        if (cityNameLabel != null) cityNameLabel.setText(data.city());
-        if (temperatureLabel != null) temperatureLabel.setText(String.format("%.0f°", data.currentTemp()));
-        if (descriptionLabel != null) descriptionLabel.setText(data.currentCondition().getDescription());
-
-        if (!data.dailyForecasts().isEmpty() && highLowLabel != null) {
-            WeatherService.DailyForecast today = data.dailyForecasts().get(0);
-            highLowLabel.setText(String.format("↑: %.0f°  ↓: %.0f°", today.maxTemp(), today.minTemp()));
+    // Wybrana podpowiedź ma już współrzędne, więc ładowanie pomija geokodowanie i nie trafi w inne miasto o tej nazwie
+    private void selectPlace(WeatherService.Place place) {
+        typeAhead.cancel();
+        suggestions.hide();
+        String query = place.label();
+        settingCityText = true;
+        try {
+            cityInput.setText(query);
+        } finally {
+            settingCityText = false;
         }
+        weatherService.rememberCoordinates(query, place.coordinates());
+        loadWeatherDataForCity(query);
+    }
 
-        if (hourlyContainer != null) {
-            hourlyContainer.getChildren().clear();
-            for (WeatherService.HourlyForecast h : data.hourlyForecasts()) {
-                hourlyContainer.getChildren().add(createForecastTile(h.time(), h.condition().getIconFileName(), String.format("%.0f°", h.temp())));
-            }
+    private void loadWeatherDataForCity(String cityName) {
+        // Odświeżenie bieżącego miasta nie gasi gwiazdki na czas zapytania
+        if (!Gazetteer.normalize(cityName).equals(Gazetteer.normalize(currentQuery))) {
+            Platform.runLater(() -> { if (starIcon != null) starIcon.setText("☆"); });
         }
+        favoritesRefresher.markViewed(cityName);
+        long requestedAt = System.nanoTime();
 
-        if (dailyContainer != null) {
-            dailyContainer.getChildren().clear();
-            for (WeatherService.DailyForecast d : data.dailyForecasts()) {
-                dailyContainer.getChildren().add(createForecastTile(d.day(), d.condition().getIconFileName(), String.format("%.0f°", d.maxTemp())));
+        weatherLoader.submitAsync(() -> weatherService.loadCityAsync(cityName), data -> {
+            if (data == null) {
+                cityNameLabel.setText("Nie znaleziono");
+                return;
             }
+
+            String fullName = data.city();
+            String rawName = rawName(fullName);
+
+            this.currentQuery = cityName;
+            this.currentCityRawName = rawName;
+            this.currentLocationName = fullName;
+            updateUI(data);
+            updateStarIcon(rawName);
+            Metrics.getInstance().record("load.total", System.nanoTime() - requestedAt);
+        }, Throwable::printStackTrace);
+    }
+
+    private static String rawName(String fullName) {
+        return fullName.contains(" (") ? fullName.split(" \\(")[0].trim() : fullName.trim();
+    }
+
+    // Wszystkie zmiany w jednym zdarzeniu FX - JavaFX policzy CSS i layout raz, w najbliższym pulsie
+    private void updateUI(WeatherService.WeatherData data) {
+        Metrics.Timer timer = Metrics.getInstance().start("render", data.city());
+        currentData = data;
+        scheduleNextTick(data);
+        int changed = render(data, System.currentTimeMillis() / 1000, cityNameLabel, temperatureLabel, descriptionLabel,
+                highLowLabel, hourlyChart, dailyContainer);
+
+        long elapsed = timer.stop(true);
+        if (TIMING) {
+            System.out.printf("updateUI: %.3f ms, zmienionych węzłów: %d%n", elapsed / 1e6, changed);
         }
     }
 
-    private VBox createForecastTile(String time, String iconName, String temp) {
-        VBox box = new VBox(5);
-        box.getStyleClass().add("forecast-tile");
+    /**
+     * Jedno przejście renderowania bez stanu kontrolera - z niego korzysta też benchmark całego updateUI.
+     * Węzły bez zmian nie są dotykane; zwraca liczbę zmienionych.
+     */
+    static int render(WeatherService.WeatherData data, long nowEpochSecond, Label cityName, Label temperature,
+                      Label description, Label highLow, ForecastChart chart, HBox dailyContainer) {
+        int changed = 0;
+        if (cityName != null && ForecastTile.setText(cityName, data.city())) changed++;
+        if (temperature != null && ForecastTile.setText(temperature, String.format("%.0f°", data.currentTemp()))) changed++;
+        if (description != null && ForecastTile.setText(description, data.currentCondition().getDescription())) changed++;
+
+        List<WeatherService.DailyForecast> daily = data.dailyForecasts(nowEpochSecond);
+        if (!daily.isEmpty() && highLow != null) {
+            WeatherService.DailyForecast today = daily.get(0);
+            if (ForecastTile.setText(highLow, String.format("↑: %.0f°  ↓: %.0f°", today.maxTemp(), today.minTemp()))) changed++;
+        }
 
-        Label timeLabel = new Label(time);
-        timeLabel.getStyleClass().add("forecast-time");
+        // Cała seria godzinowa (do 16 dni) na jednym Canvas; wykres sam przerysuje tylko zmienione punkty
+        if (chart != null && chart.setSeries(data.hourly(), nowEpochSecond)) changed++;
 
-        ImageView iv = new ImageView();
-        try {
-            String path = "/org/atmo/atmo/" + iconName;
-            if (getClass().getResource(iconName) != null) {
-                icon.setImage(new Image(Objects.requireNonNull(getClass().getResourceAsStream(iconName))));
-            } else {
-                icon.setImage(new Image(Objects.requireNonNull(getClass().getResourceAsStream("cloud.png"))));
+        if (dailyContainer != null) {
+            List<ForecastTile> tiles = tiles(dailyContainer, daily.size());
+            for (int i = 0; i < daily.size(); i++) {
+                WeatherService.DailyForecast d = daily.get(i);
+                if (tiles.get(i).update(d.day(), icon(d.condition()), String.format("%.0f°", d.maxTemp()))) changed++;
             }
-            icon.setFitWidth(40);
-            icon.setFitHeight(40);
-        } catch (Exception e) {}
+        }
+        return changed;
+    }
+
+    /**
+     * Okno godzinowe przesuwa się samo: tuż po kolejnej pełnej godzinie z serii
+     * renderujemy ponownie te same dane (bez zapytania do sieci).
+     */
+    private void scheduleNextTick(WeatherService.WeatherData data) {
+        if (nextTick != null) nextTick.cancel(false);
+        if (clock.isShutdown()) return;
+        long now = System.currentTimeMillis() / 1000;
+        int next = data.hourly().indexAtOrAfter(now);
+        if (next >= data.hourly().size()) return;
+
+        long delayMillis = (data.hourly().time(next) + 1 - now) * 1000;
+        nextTick = clock.schedule(() -> Platform.runLater(() -> {
+            if (currentData == data) updateUI(data);
+        }), delayMillis, TimeUnit.MILLISECONDS);
+    }
 
-        Label tempLabel = new Label(temp);
-        tempLabel.getStyleClass().add("forecast-temp");
+    private void toggleStatsOverlay() {
+        if (statsOverlay == null) return;
+        boolean show = !statsOverlay.isVisible();
+        statsOverlay.setVisible(show);
+        statsOverlay.setManaged(show);
+        if (overlayRefresh != null) overlayRefresh.cancel(false);
+        overlayRefresh = null;
+        if (show && !clock.isShutdown()) {
+            overlayRefresh = clock.scheduleAtFixedRate(() -> {
+                String summary = Metrics.getInstance().summary();
+                Platform.runLater(() -> statsOverlay.setText(summary));
+            }, 0, 1, TimeUnit.SECONDS);
+        }
+    }
 
-        box.getChildren().addAll(timeLabel, iv, tempLabel);
-        return box;
+    private static Image icon(WeatherCondition condition) {
+        return IconCache.getInstance().get(condition.getIconFileName(), TILE_ICON_SIZE);
     }
 
-}
\ No newline at end of file
+    /**
+     * Kafelki są tworzone tylko przy pierwszym renderze; nadmiarowe ukrywamy
+     * zamiast usuwać, więc kolejne odświeżenia nie zmieniają grafu sceny.
+     */
+    private static List<ForecastTile> tiles(HBox container, int count) {
+        List<ForecastTile> tiles = new ArrayList<>(count);
+        for (Node node : container.getChildren()) {
+            if (node instanceof ForecastTile tile) tiles.add(tile);
+        }
+        while (tiles.size() < count) {
+            ForecastTile tile = new ForecastTile(TILE_ICON_SIZE);
+            container.getChildren().add(tile);
+            tiles.add(tile);
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            boolean shown = i < count;
+            ForecastTile tile = tiles.get(i);
+            if (tile.isVisible() != shown) {
+                tile.setVisible(shown);
+                tile.setManaged(shown);
+            }
+        }
+        return tiles;
+    }
+}
@@ -0,0 +1,56 @@
+package org.atmo.atmo;
+
+import javafx.scene.image.Image;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wspólny cache ikon pogody, przeskalowanych od razu do rozmiaru kafelka.
+ * Każda para (ikona, rozmiar) jest dekodowana raz, w tle, a kafelki dzielą ten sam obiekt Image.
+ */
+public class IconCache {
+
+    private static final String FALLBACK_ICON = "cloud.png";
+    private static IconCache instance;
+
+    private record Key(String iconName, int size) {}
+
+    private final Map<Key, Image> images = new ConcurrentHashMap<>();
+
+    private IconCache() {}
+
+    public static synchronized IconCache getInstance() {
+        if (instance == null) instance = new IconCache();
+        return instance;
+    }
+
+    /** Zleca dekodowanie wszystkich ikon używanych przez WeatherCondition. */
+    public void preload(int size) {
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            get(condition.getIconFileName(), size);
+        }
+    }
+
+    public Image get(String iconName, int size) {
+        Key key = new Key(iconName, size);
+        Image image = images.get(key);
+        if (image != null) return image;
+
+        URL url = IconCache.class.getResource(iconName);
+        if (url == null) {
+            System.err.println("Nie udało się załadować ikony: " + iconName);
+            if (FALLBACK_ICON.equals(iconName)) return null;
+            Image fallback = get(FALLBACK_ICON, size);
+            if (fallback != null) images.putIfAbsent(key, fallback);
+            return fallback;
+        }
+        // Skalowanie przy dekodowaniu - w pamięci trzymamy tylko size x size pikseli
+        return images.computeIfAbsent(key, k -> new Image(url.toExternalForm(), size, size, true, true, true));
+    }
+
+    public int size() {
+        return images.size();
+    }
+}
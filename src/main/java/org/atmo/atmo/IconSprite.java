@@ -0,0 +1,74 @@
+package org.atmo.atmo;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wszystkie ikony pogody w jednym obrazie (obok siebie, po {@code size} pikseli).
+ * Wykres rysuje każdą ikonę jako wycinek tego samego obrazu, więc setki ikon
+ * to jedna tekstura zamiast setek węzłów ImageView.
+ */
+public final class IconSprite {
+
+    private static final Map<Integer, IconSprite> SPRITES = new ConcurrentHashMap<>();
+
+    private final Image image;
+    private final int size;
+    private final Map<String, Integer> columns;
+
+    private IconSprite(Image image, int size, Map<String, Integer> columns) {
+        this.image = image;
+        this.size = size;
+        this.columns = columns;
+    }
+
+    public static IconSprite get(int size) {
+        return SPRITES.computeIfAbsent(size, IconSprite::build);
+    }
+
+    public int size() { return size; }
+
+    /** Rysuje ikonę warunków wyśrodkowaną w punkcie (x, y). */
+    public void draw(GraphicsContext g, WeatherCondition condition, double x, double y) {
+        Integer column = columns.get(condition.getIconFileName());
+        if (column == null) return;
+        g.drawImage(image, column * size, 0, size, size, x - size / 2.0, y - size / 2.0, size, size);
+    }
+
+    // Ikony są małe, więc dekodujemy je synchronicznie przy pierwszym użyciu danego rozmiaru
+    private static IconSprite build(int size) {
+        Map<String, Image> icons = new LinkedHashMap<>();
+        for (WeatherCondition condition : WeatherCondition.values()) {
+            String name = condition.getIconFileName();
+            if (icons.containsKey(name)) continue;
+            URL url = IconSprite.class.getResource(name);
+            if (url == null) {
+                System.err.println("Nie udało się załadować ikony: " + name);
+                continue;
+            }
+            Image icon = new Image(url.toExternalForm(), size, size, true, true, false);
+            if (!icon.isError()) icons.put(name, icon);
+        }
+
+        WritableImage sprite = new WritableImage(Math.max(1, icons.size()) * size, size);
+        PixelWriter writer = sprite.getPixelWriter();
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        for (Map.Entry<String, Image> entry : icons.entrySet()) {
+            Image icon = entry.getValue();
+            int column = columns.size();
+            // Ikona o innych proporcjach jest wyśrodkowana w swojej komórce
+            int w = (int) Math.min(size, icon.getWidth());
+            int h = (int) Math.min(size, icon.getHeight());
+            writer.setPixels(column * size + (size - w) / 2, (size - h) / 2, w, h, icon.getPixelReader(), 0, 0);
+            columns.put(entry.getKey(), column);
+        }
+        return new IconSprite(sprite, size, columns);
+    }
+}
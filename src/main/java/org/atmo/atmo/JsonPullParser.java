@@ -0,0 +1,279 @@
+package org.atmo.atmo;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Minimalny parser JSON typu pull czytający bezpośrednio z {@link InputStream}.
+ * Nie buduje drzewa dokumentu - wołający pobiera kolejne tokeny przez {@link #next()}
+ * i sam decyduje, co zachować, a co pominąć przez {@link #skipValue()}.
+ */
+public class JsonPullParser {
+
+    public enum Token { START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL, END }
+
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+
+    private char[] text = new char[64];
+    private int textLength;
+
+    // Stos kontekstów: true = obiekt, false = tablica
+    private boolean[] stack = new boolean[16];
+    private int depth;
+    private boolean expectFieldName;
+    private Token current;
+
+    public JsonPullParser(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    JsonPullParser(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public Token current() { return current; }
+
+    public Token next() throws IOException {
+        int c = skipSeparators();
+        if (c < 0) {
+            if (depth != 0) throw error("Nieoczekiwany koniec danych");
+            return current = Token.END;
+        }
+
+        if (expectFieldName && c != '}') {
+            if (c != '"') throw error("Oczekiwano nazwy pola");
+            readString();
+            if (skipWhitespace() != ':') throw error("Oczekiwano ':'");
+            pos++;
+            expectFieldName = false;
+            return current = Token.FIELD_NAME;
+        }
+
+        pos++;
+        switch (c) {
+            case '{' -> { push(true); expectFieldName = true; return current = Token.START_OBJECT; }
+            case '[' -> { push(false); return current = Token.START_ARRAY; }
+            case '}' -> { pop(true); return current = Token.END_OBJECT; }
+            case ']' -> { pop(false); return current = Token.END_ARRAY; }
+            case '"' -> { pos--; readString(); afterValue(); return current = Token.STRING; }
+            case 't' -> { expectLiteral("rue"); afterValue(); return current = Token.TRUE; }
+            case 'f' -> { expectLiteral("alse"); afterValue(); return current = Token.FALSE; }
+            case 'n' -> { expectLiteral("ull"); afterValue(); return current = Token.NULL; }
+            default -> {
+                if (c != '-' && (c < '0' || c > '9')) throw error("Nieoczekiwany znak '" + (char) c + "'");
+                pos--;
+                readNumber();
+                afterValue();
+                return current = Token.NUMBER;
+            }
+        }
+    }
+
+    // Pomija bieżącą wartość (razem z zagnieżdżeniami), gdy kursor stoi na nazwie pola lub na początku wartości
+    public void skipValue() throws IOException {
+        Token token = current == Token.FIELD_NAME ? next() : current;
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) return;
+        int target = depth - 1;
+        while (depth > target) {
+            if (next() == Token.END) throw error("Nieoczekiwany koniec danych");
+        }
+    }
+
+    public String getText() { return new String(text, 0, textLength); }
+
+    public int textLength() { return textLength; }
+
+    public char textCharAt(int index) { return text[index]; }
+
+    public boolean textEquals(String s) {
+        if (s.length() != textLength) return false;
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public double getDouble() {
+        if (current != Token.NUMBER) throw new IllegalStateException("Bieżący token to " + current);
+        return parseDouble();
+    }
+
+    public int getInt() {
+        return (int) getLong();
+    }
+
+    public long getLong() {
+        if (current != Token.NUMBER) throw new IllegalStateException("Bieżący token to " + current);
+        long value = 0;
+        int i = 0;
+        boolean negative = text[0] == '-';
+        if (negative) i++;
+        for (; i < textLength; i++) {
+            char ch = text[i];
+            if (ch < '0' || ch > '9') return (long) parseDouble();
+            value = value * 10 + (ch - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDouble() {
+        // Szybka ścieżka dla typowych wartości ("12.3", "-0.5"): mantysa < 2^53 i potęga 10 <= 22
+        // dają dokładnie zaokrąglony wynik, identyczny z Double.parseDouble
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int i = 0;
+        boolean negative = text[0] == '-';
+        if (negative) i++;
+        for (; i < textLength; i++) {
+            char ch = text[i];
+            if (ch == '.' && !fraction) {
+                fraction = true;
+            } else if (ch >= '0' && ch <= '9') {
+                if (digits > 17) return Double.parseDouble(getText());
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa != 0) digits++;
+                if (fraction) scale++;
+            } else {
+                return Double.parseDouble(getText());
+            }
+        }
+        if (digits > 15 || scale >= POW10.length) return Double.parseDouble(getText());
+        double value = scale == 0 ? mantissa : mantissa / POW10[scale];
+        return negative ? -value : value;
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) stack = java.util.Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = object;
+    }
+
+    private void pop(boolean object) throws IOException {
+        if (depth == 0 || stack[depth - 1] != object) throw error("Niedopasowany nawias");
+        depth--;
+        afterValue();
+    }
+
+    private void afterValue() {
+        expectFieldName = false;
+    }
+
+    // Przecinki są obsługiwane tu: po przecinku w obiekcie spodziewamy się nazwy pola
+    private int skipSeparators() throws IOException {
+        int c = skipWhitespace();
+        if (c == ',') {
+            pos++;
+            if (depth > 0 && stack[depth - 1]) expectFieldName = true;
+            c = skipWhitespace();
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) return -1;
+            byte b = buffer[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return b & 0xFF;
+            pos++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) throw error("Nieoczekiwany koniec danych");
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) throw error("Nieprawidłowy literał");
+        }
+    }
+
+    private void readNumber() throws IOException {
+        textLength = 0;
+        while (true) {
+            if (pos == limit && !fill()) return;
+            int c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                appendText((char) c);
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void readString() throws IOException {
+        read(); // otwierający cudzysłów
+        textLength = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') return;
+            if (c == '\\') {
+                int e = read();
+                switch (e) {
+                    case 'n' -> appendText('\n');
+                    case 't' -> appendText('\t');
+                    case 'r' -> appendText('\r');
+                    case 'b' -> appendText('\b');
+                    case 'f' -> appendText('\f');
+                    case 'u' -> {
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) code = code * 16 + Character.digit(read(), 16);
+                        appendText((char) code);
+                    }
+                    default -> appendText((char) e);
+                }
+            } else if (c < 0x80) {
+                appendText((char) c);
+            } else {
+                readUtf8(c);
+            }
+        }
+    }
+
+    private void readUtf8(int first) throws IOException {
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            codePoint = ((first & 0x1F) << 6) | (read() & 0x3F);
+        } else if ((first & 0xF0) == 0xE0) {
+            codePoint = ((first & 0x0F) << 12) | ((read() & 0x3F) << 6) | (read() & 0x3F);
+        } else {
+            codePoint = ((first & 0x07) << 18) | ((read() & 0x3F) << 12) | ((read() & 0x3F) << 6) | (read() & 0x3F);
+        }
+        if (Character.isBmpCodePoint(codePoint)) {
+            appendText((char) codePoint);
+        } else {
+            appendText(Character.highSurrogate(codePoint));
+            appendText(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private void appendText(char c) {
+        if (textLength == text.length) text = java.util.Arrays.copyOf(text, textLength * 2);
+        text[textLength++] = c;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " (głębokość " + depth + ")");
+    }
+}
@@ -0,0 +1,105 @@
+package org.atmo.atmo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Wykonuje ładowania na wątkach wirtualnych tak, że wygrywa zawsze ostatnie zlecenie.
+ * Nowe zlecenie przerywa poprzednie (anulowanie future przerywa wtedy żądanie HTTP),
+ * a wynik zlecenia, które zostało wyprzedzone, nie trafia do odbiorcy.
+ */
+public class LatestWinsLoader {
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("weather-load-", 0).factory());
+    private final Executor callbackExecutor;
+    private final Semaphore inFlight;
+    private final AtomicLong generation = new AtomicLong();
+    private Future<?> current;
+
+    public LatestWinsLoader(int maxInFlight, Executor callbackExecutor) {
+        this.inFlight = new Semaphore(maxInFlight);
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public <T> long submit(Callable<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        long token;
+        Future<?> previous;
+        // Token i podmiana bieżącego zlecenia pod jedną blokadą - inaczej dwa równoczesne zlecenia
+        // mogłyby się podmienić w odwrotnej kolejności niż tokeny i żadne nie dostarczyłoby wyniku
+        synchronized (this) {
+            token = generation.incrementAndGet();
+            previous = current;
+            current = executor.submit(() -> run(token, task, onSuccess, onError));
+        }
+        if (previous != null) previous.cancel(true);
+        return token;
+    }
+
+    // Wątek wirtualny czeka na future bez blokowania wątku platformowego; przerwanie anuluje future
+    public <T> long submitAsync(Supplier<CompletableFuture<T>> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        return submit(() -> {
+            CompletableFuture<T> future = task.get();
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+        }, onSuccess, onError);
+    }
+
+    public boolean isCurrent(long token) {
+        return generation.get() == token;
+    }
+
+    public void cancel() {
+        Future<?> previous;
+        synchronized (this) {
+            generation.incrementAndGet();
+            previous = current;
+            current = null;
+        }
+        if (previous != null) previous.cancel(true);
+    }
+
+    private <T> void run(long token, Callable<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            if (!isCurrent(token)) return;
+            T result = task.call();
+            deliver(token, () -> onSuccess.accept(result));
+        } catch (InterruptedException | CancellationException e) {
+            // Zlecenie wyprzedzone przez nowsze - nic nie zgłaszamy
+        } catch (Exception e) {
+            deliver(token, () -> onError.accept(e));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    // Token sprawdzamy jeszcze raz na wątku odbiorcy - nowsze zlecenie mogło przyjść w międzyczasie
+    private void deliver(long token, Runnable callback) {
+        if (!isCurrent(token)) return;
+        callbackExecutor.execute(() -> {
+            if (isCurrent(token)) callback.run();
+        });
+    }
+}
@@ -0,0 +1,129 @@
+package org.atmo.atmo;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generator obciążenia dla WeatherService: wiele równoległych ładowań miast (geokodowanie + prognoza)
+ * i raport percentyli opóźnień. Bez --url uruchamia własną atrapę {@link OpenMeteoStubServer}.
+ *
+ * Użycie: LoadGenerator [--requests N] [--concurrency N] [--cities N] [--fresh-seconds N]
+ *                       [--latency ms] [--jitter ms] [--error-rate p] [--days N] [--url adres]
+ *                       [--tail-rate p] [--tail-ms ms] [--no-hedging]
+ */
+public class LoadGenerator {
+
+    public record Options(int requests, int concurrency, int cities, Duration freshTtl) {}
+
+    public record Report(int requests, int errors, long elapsedNanos, long[] sortedLatenciesNanos) {
+        public long percentile(double p) {
+            if (sortedLatenciesNanos.length == 0) return 0;
+            int index = (int) Math.ceil(p * sortedLatenciesNanos.length) - 1;
+            return sortedLatenciesNanos[Math.max(0, Math.min(index, sortedLatenciesNanos.length - 1))];
+        }
+
+        public double throughputPerSecond() {
+            return requests / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d żądań (błędy: %d) w %.2f s, %.0f żądań/s | p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms",
+                    requests, errors, elapsedNanos / 1e9, throughputPerSecond(),
+                    percentile(0.50) / 1e6, percentile(0.99) / 1e6, percentile(0.999) / 1e6,
+                    percentile(1.0) / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(10_000, 64, 500, Duration.ZERO);
+        OpenMeteoStubServer.Config stubConfig = OpenMeteoStubServer.Config.defaults();
+        String url = null;
+        ResilientCaller.Policy policy = ResilientCaller.Policy.defaults();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--no-hedging")) {
+                policy = policy.withHedging(false);
+                continue;
+            }
+            String value = i + 1 < args.length ? args[++i] : "";
+            switch (option) {
+                case "--requests" -> options = new Options(Integer.parseInt(value), options.concurrency(), options.cities(), options.freshTtl());
+                case "--concurrency" -> options = new Options(options.requests(), Integer.parseInt(value), options.cities(), options.freshTtl());
+                case "--cities" -> options = new Options(options.requests(), options.concurrency(), Integer.parseInt(value), options.freshTtl());
+                case "--fresh-seconds" -> options = new Options(options.requests(), options.concurrency(), options.cities(), Duration.ofSeconds(Long.parseLong(value)));
+                case "--latency" -> stubConfig = stubConfig.withLatency(Duration.ofMillis(Long.parseLong(value)), stubConfig.jitter());
+                case "--jitter" -> stubConfig = stubConfig.withLatency(stubConfig.latency(), Duration.ofMillis(Long.parseLong(value)));
+                case "--error-rate" -> stubConfig = stubConfig.withErrorRate(Double.parseDouble(value));
+                case "--days" -> stubConfig = stubConfig.withForecastDays(Integer.parseInt(value));
+                case "--tail-rate" -> stubConfig = stubConfig.withTail(Double.parseDouble(value), stubConfig.tailLatency());
+                case "--tail-ms" -> stubConfig = stubConfig.withTail(stubConfig.tailRate(), Duration.ofMillis(Long.parseLong(value)));
+                case "--url" -> url = value;
+                default -> {
+                    System.err.println("Nieznana opcja: " + option);
+                    System.exit(1);
+                }
+            }
+        }
+
+        OpenMeteoStubServer stub = url == null ? OpenMeteoStubServer.start(stubConfig) : null;
+        String baseUrl = stub != null ? stub.baseUrl() : url;
+        try {
+            ForecastCache cache = new ForecastCache(options.cities(), options.freshTtl(), Duration.ZERO, null);
+            WeatherService service = new WeatherService(cache, Gazetteer.empty(), baseUrl, baseUrl, policy);
+            System.out.println("Cel: " + baseUrl + (stub != null ? " " + stubConfig : "") + " " + options);
+
+            Report report = run(service, options);
+            System.out.println(report);
+            System.out.println(Metrics.getInstance().summary());
+            System.out.println("Cache: " + cache.stats());
+            System.out.println("Scalanie: geokodowanie " + service.getGeocodeFlightStats() + ", prognoza " + service.getForecastFlightStats());
+            if (stub != null) {
+                System.out.printf("Atrapa: %d zapytań o prognozę, %d o geokodowanie, %d wstrzykniętych błędów%n",
+                        stub.forecastRequests(), stub.geocodingRequests(), stub.injectedErrors());
+            }
+        } finally {
+            if (stub != null) stub.close();
+        }
+    }
+
+    public static Report run(WeatherService service, Options options) throws InterruptedException {
+        long[] latencies = new long[options.requests()];
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        Semaphore permits = new Semaphore(options.concurrency());
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("load-", 0).factory())) {
+            for (int i = 0; i < options.requests(); i++) {
+                int slot = i;
+                String city = "Miasto " + ThreadLocalRandom.current().nextInt(options.cities());
+                permits.acquire();
+                executor.submit(() -> {
+                    long t0 = System.nanoTime();
+                    try {
+                        if (service.loadCityAsync(city).get() == null) errors.incrementAndGet();
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latencies[slot] = System.nanoTime() - t0;
+                        completed.incrementAndGet();
+                        permits.release();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] sorted = Arrays.copyOf(latencies, completed.get());
+        Arrays.sort(sorted);
+        return new Report(options.requests(), errors.get(), elapsed, sorted);
+    }
+}
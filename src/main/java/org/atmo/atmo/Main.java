@@ -12,6 +12,8 @@ import java.util.Objects;
 
 public class Main extends Application {
 
+    private HelloController controller;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         URL fxmlUrl = getClass().getResource("weather-view.fxml");
@@ -19,7 +21,9 @@ public class Main extends Application {
             System.err.println("Cannot find weather-view.fxml");
             return;
         }
-        Parent root = FXMLLoader.load(fxmlUrl);
+        FXMLLoader loader = new FXMLLoader(fxmlUrl);
+        Parent root = loader.load();
+        controller = loader.getController();
 
         primaryStage.setTitle("Atmo");
 
@@ -39,9 +43,17 @@ public class Main extends Application {
 
         primaryStage.setScene(scene);
         primaryStage.setResizable(false);
+        controller.watchStartup(scene);
+        controller.watchActivity(primaryStage);
+        primaryStage.iconifiedProperty().addListener((obs, wasIconified, iconified) -> controller.setBackgrounded(iconified));
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
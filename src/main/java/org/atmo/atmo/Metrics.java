@@ -0,0 +1,123 @@
+package org.atmo.atmo;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Rejestr metryk aplikacji: histogramy czasów etapów i liczniki zdarzeń.
+ * Każdy pomiar etapu trafia też do JFR jako {@link StageEvent}.
+ */
+public class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /** Pomiar jednego etapu; zakończenie przez {@link #stop(boolean)}. */
+    public final class Timer {
+        private final String stage;
+        private final String detail;
+        private final long startNanos = System.nanoTime();
+        private final StageEvent event = new StageEvent();
+
+        private Timer(String stage, String detail) {
+            this.stage = stage;
+            this.detail = detail;
+            event.begin();
+        }
+
+        public long stop(boolean success) {
+            long elapsed = System.nanoTime() - startNanos;
+            histogram(stage).recordNanos(elapsed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.detail = detail;
+                event.success = success;
+                event.measured = elapsed;
+                event.commit();
+            }
+            return elapsed;
+        }
+    }
+
+    public Timer start(String stage, String detail) {
+        return new Timer(stage, detail);
+    }
+
+    /** Mierzy czas do zakończenia future; anulowanie nie jest liczone jako etap. */
+    public <T> CompletableFuture<T> time(String stage, String detail, CompletableFuture<T> future) {
+        Timer timer = start(stage, detail);
+        future.whenComplete((value, error) -> {
+            if (!future.isCancelled()) timer.stop(error == null);
+        });
+        return future;
+    }
+
+    /** Czas zmierzony poza {@link Timer} (np. od startu procesu albo przez kilka wątków). */
+    public void record(String stage, long nanos) {
+        histogram(stage).recordNanos(nanos);
+        StageEvent event = new StageEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.success = true;
+            event.measured = nanos;
+            event.commit();
+        }
+    }
+
+    public LatencyHistogram histogram(String stage) {
+        return histograms.computeIfAbsent(stage, k -> new LatencyHistogram());
+    }
+
+    public void increment(String counter) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+
+    public void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+    }
+
+    /** Wartość odczytywana w chwili raportu, np. głębokość kolejki; ponowna rejestracja zastępuje poprzednią. */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public long count(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    /** Tekstowe podsumowanie dla nakładki diagnostycznej i logów. */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(histograms).forEach((stage, h) -> {
+            if (h.count() == 0) return;
+            sb.append(String.format(Locale.ROOT, "%-16s n=%-5d p50 %7.1f  p99 %7.1f  max %7.1f ms%n",
+                    stage, h.count(), h.percentileMicros(0.50) / 1000.0,
+                    h.percentileMicros(0.99) / 1000.0, h.maxMicros() / 1000.0));
+        });
+        new TreeMap<>(counters).forEach((name, value) -> {
+            if (value.sum() > 0) sb.append(String.format(Locale.ROOT, "%-16s %d%n", name, value.sum()));
+        });
+        new TreeMap<>(gauges).forEach((name, value) ->
+                sb.append(String.format(Locale.ROOT, "%-16s %d%n", name, value.getAsLong())));
+        return sb.isEmpty() ? "Brak pomiarów" : sb.toString().stripTrailing();
+    }
+}
@@ -0,0 +1,306 @@
+package org.atmo.atmo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Lokalna atrapa API Open-Meteo (geokodowanie i prognoza) do testów wydajności bez dostępu do sieci.
+ * Opóźnienie, rozrzut, odsetek błędów (także uszkodzonych odpowiedzi) i długość prognozy ustawia się w {@link Config}.
+ *
+ * Użycie: OpenMeteoStubServer [port] [opóźnienie-ms] [rozrzut-ms] [odsetek-błędów] [dni-prognozy]
+ *                            [odsetek-wolnych] [opóźnienie-wolnych-ms]
+ */
+public class OpenMeteoStubServer implements AutoCloseable {
+
+    private static final int UTC_OFFSET_SECONDS = 3600;
+    // Kolejne wyniki wyszukiwania (count > 1) zaczynają się od wpisanej nazwy, jak w prawdziwym API
+    private static final String[] GEOCODING_SUFFIXES = {"", " Górny", " Dolny", " Mały", " Wielki"};
+
+    // tailRate: odsetek żądań, które zamiast latency czekają tailLatency (ogon rozkładu opóźnień)
+    // malformedRate: odsetek odpowiedzi 200 z uszkodzonym JSON-em
+    public record Config(Duration latency, Duration jitter, double errorRate, int forecastDays,
+                         double tailRate, Duration tailLatency, double malformedRate) {
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(50), Duration.ofMillis(20), 0.0, 16, 0.0, Duration.ZERO, 0.0);
+        }
+
+        public Config withLatency(Duration latency, Duration jitter) {
+            return new Config(latency, jitter, errorRate, forecastDays, tailRate, tailLatency, malformedRate);
+        }
+
+        public Config withErrorRate(double errorRate) {
+            return new Config(latency, jitter, errorRate, forecastDays, tailRate, tailLatency, malformedRate);
+        }
+
+        public Config withForecastDays(int forecastDays) {
+            return new Config(latency, jitter, errorRate, forecastDays, tailRate, tailLatency, malformedRate);
+        }
+
+        public Config withTail(double tailRate, Duration tailLatency) {
+            return new Config(latency, jitter, errorRate, forecastDays, tailRate, tailLatency, malformedRate);
+        }
+
+        public Config withMalformedRate(double malformedRate) {
+            return new Config(latency, jitter, errorRate, forecastDays, tailRate, tailLatency, malformedRate);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile Config config;
+    private volatile byte[] isoLocation;
+    private volatile byte[] unixLocation;
+
+    private final AtomicLong geocodingRequests = new AtomicLong();
+    private final AtomicLong forecastRequests = new AtomicLong();
+    private final AtomicLong forecastLocations = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private OpenMeteoStubServer(int port, Config config) throws IOException {
+        setConfig(config);
+        // Opóźnienie to zwykły sleep - na wątkach wirtualnych tysiące równoległych żądań nic nie kosztują
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stub-http-", 0).factory());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1/search", this::handleGeocoding);
+        server.createContext("/v1/forecast", this::handleForecast);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    public static OpenMeteoStubServer start(Config config) throws IOException {
+        return new OpenMeteoStubServer(0, config);
+    }
+
+    public static OpenMeteoStubServer start(int port, Config config) throws IOException {
+        return new OpenMeteoStubServer(port, config);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        Config defaults = Config.defaults();
+        Config config = new Config(
+                args.length > 1 ? Duration.ofMillis(Long.parseLong(args[1])) : defaults.latency(),
+                args.length > 2 ? Duration.ofMillis(Long.parseLong(args[2])) : defaults.jitter(),
+                args.length > 3 ? Double.parseDouble(args[3]) : defaults.errorRate(),
+                args.length > 4 ? Integer.parseInt(args[4]) : defaults.forecastDays(),
+                args.length > 5 ? Double.parseDouble(args[5]) : defaults.tailRate(),
+                args.length > 6 ? Duration.ofMillis(Long.parseLong(args[6])) : defaults.tailLatency(),
+                defaults.malformedRate()
+        );
+        OpenMeteoStubServer stub = start(port, config);
+        System.out.println("Atrapa Open-Meteo: " + stub.baseUrl() + " " + config);
+        System.out.println("Uruchom aplikację z -Datmo.geocodingUrl=" + stub.baseUrl() + " -Datmo.forecastUrl=" + stub.baseUrl());
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Config getConfig() { return config; }
+
+    public void setConfig(Config config) {
+        this.config = config;
+        this.isoLocation = locationJson(config.forecastDays(), false);
+        this.unixLocation = locationJson(config.forecastDays(), true);
+    }
+
+    public long geocodingRequests() { return geocodingRequests.get(); }
+
+    public long forecastRequests() { return forecastRequests.get(); }
+
+    public long forecastLocations() { return forecastLocations.get(); }
+
+    public long injectedErrors() { return injectedErrors.get(); }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleGeocoding(HttpExchange exchange) throws IOException {
+        geocodingRequests.incrementAndGet();
+        if (simulateNetwork(exchange)) return;
+
+        Map<String, String> query = query(exchange);
+        String name = query.getOrDefault("name", "");
+        int count = Math.min(GEOCODING_SUFFIXES.length, Math.max(1, Integer.parseInt(query.getOrDefault("count", "1"))));
+        // Deterministyczne współrzędne z nazwy - to samo miasto zawsze trafia w ten sam wpis cache
+        StringJoiner results = new StringJoiner(",", "{\"results\":[", "]}");
+        for (int i = 0; i < count; i++) {
+            String resultName = name + GEOCODING_SUFFIXES[i];
+            int hash = Gazetteer.normalize(resultName).hashCode();
+            double latitude = 35 + Math.floorMod(hash, 3000) / 100.0;
+            double longitude = -10 + Math.floorMod(hash >>> 8, 4000) / 100.0;
+            results.add(String.format(Locale.ROOT,
+                    "{\"name\":\"%s\",\"latitude\":%.4f,\"longitude\":%.4f,\"country\":\"Polska\",\"admin1\":\"Region %d\"}",
+                    resultName.replace("\\", "\\\\").replace("\"", "\\\""), latitude, longitude, Math.floorMod(hash, 16)));
+        }
+        respond(exchange, results.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleForecast(HttpExchange exchange) throws IOException {
+        forecastRequests.incrementAndGet();
+        if (simulateNetwork(exchange)) return;
+
+        Map<String, String> query = query(exchange);
+        int locations = query.getOrDefault("latitude", "0").split(",").length;
+        forecastLocations.addAndGet(locations);
+        byte[] location = "unixtime".equals(query.get("timeformat")) ? unixLocation : isoLocation;
+
+        if (locations == 1) {
+            respond(exchange, location);
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream(location.length * locations + locations + 1);
+        body.write('[');
+        for (int i = 0; i < locations; i++) {
+            if (i > 0) body.write(',');
+            body.write(location);
+        }
+        body.write(']');
+        respond(exchange, body.toByteArray());
+    }
+
+    // Zwraca true, jeśli zamiast odpowiedzi wstrzyknięto błąd
+    private boolean simulateNetwork(HttpExchange exchange) throws IOException {
+        Config current = config;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = current.latency().toMillis();
+        if (!current.jitter().isZero()) delay += random.nextLong(-current.jitter().toMillis(), current.jitter().toMillis() + 1);
+        if (current.tailRate() > 0 && random.nextDouble() < current.tailRate()) delay = current.tailLatency().toMillis();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                exchange.close();
+                return true;
+            }
+        }
+        if (current.errorRate() > 0 && random.nextDouble() < current.errorRate()) {
+            injectedErrors.incrementAndGet();
+            byte[] body = "{\"error\":true,\"reason\":\"Wstrzyknięty błąd\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return true;
+        }
+        if (current.malformedRate() > 0 && random.nextDouble() < current.malformedRate()) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, "{\"latitude\":50.0,\"hourly\":{\"time\":[1700000000,".getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody(), 8192)) {
+                out.write(body);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // Syntetyczna prognoza od dzisiejszej północy, w kształcie odpowiedzi Open-Meteo
+    private static byte[] locationJson(int days, boolean unixTime) {
+        LocalDate today = LocalDate.now(ZoneOffset.ofTotalSeconds(UTC_OFFSET_SECONDS));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] codes = {0, 1, 2, 3, 45, 61, 63, 71, 80, 95};
+        int hours = days * 24;
+
+        StringBuilder sb = new StringBuilder(hours * 48 + days * 64 + 256);
+        sb.append("{\"latitude\":53.44,\"longitude\":14.56,\"utc_offset_seconds\":").append(UTC_OFFSET_SECONDS)
+                .append(",\"timezone\":\"Europe/Warsaw\",\"current\":{\"temperature_2m\":")
+                .append(String.format(Locale.ROOT, "%.1f", random.nextDouble(-5, 25)))
+                .append(",\"weather_code\":").append(codes[random.nextInt(codes.length)]).append("}");
+
+        sb.append(",\"hourly\":{\"time\":[");
+        for (int i = 0; i < hours; i++) {
+            if (i > 0) sb.append(',');
+            LocalDateTime time = today.atStartOfDay().plusHours(i);
+            if (unixTime) sb.append(time.toEpochSecond(ZoneOffset.ofTotalSeconds(UTC_OFFSET_SECONDS)));
+            else sb.append('"').append(time).append('"');
+        }
+        appendNumbers(sb.append("],\"temperature_2m\":["), hours, -5, 25);
+        appendNumbers(sb.append("],\"precipitation\":["), hours, 0, 3);
+        appendNumbers(sb.append("],\"wind_speed_10m\":["), hours, 0, 40);
+        appendCodes(sb.append("],\"weather_code\":["), hours, codes);
+
+        sb.append("]},\"daily\":{\"time\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) sb.append(',');
+            LocalDate date = today.plusDays(i);
+            if (unixTime) sb.append(date.atStartOfDay().toEpochSecond(ZoneOffset.ofTotalSeconds(UTC_OFFSET_SECONDS)));
+            else sb.append('"').append(date).append('"');
+        }
+        appendNumbers(sb.append("],\"temperature_2m_max\":["), days, 10, 25);
+        appendNumbers(sb.append("],\"temperature_2m_min\":["), days, -5, 10);
+        appendNumbers(sb.append("],\"precipitation_sum\":["), days, 0, 20);
+        appendNumbers(sb.append("],\"wind_speed_10m_max\":["), days, 5, 60);
+        appendCodes(sb.append("],\"weather_code\":["), days, codes);
+        sb.append("]}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendNumbers(StringBuilder sb, int count, double min, double max) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(Math.round(random.nextDouble(min, max) * 10) / 10.0);
+        }
+    }
+
+    private static void appendCodes(StringBuilder sb, int count, int[] codes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(codes[random.nextInt(codes.length)]);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.atmo.atmo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Wspólna kolejka wychodzących żądań: pasy priorytetu (interaktywny przed widocznym, widoczny przed tłem),
+ * kubełek żetonów ograniczający tempo i limit równoległych żądań na host.
+ * Pasy poza interaktywnym nie mogą zająć ostatniego wolnego slotu ani ostatnich żetonów - zostają dla wyszukiwań użytkownika.
+ */
+public class RequestScheduler {
+
+    /**
+     * INTERACTIVE - to, na co użytkownik właśnie czeka (wyszukiwanie, wybrane miasto);
+     * VISIBLE - dane dla tego, co jest na ekranie, ale nie jest głównym wyszukiwaniem (np. panel porównania);
+     * BACKGROUND - odświeżanie, eksport, rewalidacja.
+     */
+    public enum Priority { INTERACTIVE, VISIBLE, BACKGROUND }
+
+    /**
+     * Wspólny priorytet wszystkich prób jednego pobrania (ponowień, zapytań zapasowych).
+     * Gdy na wynik zaczyna czekać użytkownik, {@link #promote} przenosi czekające próby do wyższego pasa.
+     */
+    public static final class Handle {
+        private volatile Priority priority;
+
+        public Handle(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority priority() { return priority; }
+    }
+
+    public record Limits(double permitsPerSecond, int burst, int maxConcurrentPerHost) {
+        // Darmowy plan Open-Meteo: 600 zapytań na minutę
+        public static Limits openMeteo() {
+            return new Limits(Integer.getInteger("atmo.rateLimitPerMinute", 600) / 60.0, 20, 6);
+        }
+
+        public static Limits unlimited() {
+            return new Limits(Double.POSITIVE_INFINITY, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+    }
+
+    private static RequestScheduler instance;
+
+    private final String name;
+    private final Limits limits;
+    private final double reservedTokens;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Map<Priority, Integer> queued = new EnumMap<>(Priority.class);
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private boolean drainScheduled;
+
+    private static final class Host {
+        final Map<Priority, ArrayDeque<Ticket<?>>> queues = new EnumMap<>(Priority.class);
+        int inFlight;
+
+        Host() {
+            for (Priority p : Priority.values()) queues.put(p, new ArrayDeque<>());
+        }
+    }
+
+    private static final class Ticket<T> {
+        final Host host;
+        final Handle handle;
+        final Supplier<CompletableFuture<T>> task;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long queuedAtNanos = System.nanoTime();
+        Priority priority;
+        CompletableFuture<T> running;
+
+        Ticket(Host host, Handle handle, Supplier<CompletableFuture<T>> task) {
+            this.host = host;
+            this.handle = handle;
+            this.priority = handle.priority();
+            this.task = task;
+        }
+    }
+
+    public RequestScheduler(String name, Limits limits) {
+        this.name = name;
+        this.limits = limits;
+        this.reservedTokens = limits.burst() / 4.0;
+        this.tokens = limits.burst();
+        for (Priority p : Priority.values()) {
+            queued.put(p, 0);
+            String lane = p.name().toLowerCase(Locale.ROOT);
+            Metrics.getInstance().gauge("queue." + name + "." + lane, () -> queueDepth(p));
+        }
+        Metrics.getInstance().gauge("inflight." + name, this::inFlight);
+    }
+
+    /** Wspólny dla całej aplikacji harmonogram żądań do Open-Meteo. */
+    public static synchronized RequestScheduler getInstance() {
+        if (instance == null) instance = new RequestScheduler("open-meteo", Limits.openMeteo());
+        return instance;
+    }
+
+    /**
+     * Uruchamia {@code task}, gdy pozwolą na to priorytet, żetony i limit hosta.
+     * Anulowanie wyniku usuwa żądanie z kolejki albo anuluje je w trakcie.
+     */
+    public <T> CompletableFuture<T> submit(String host, Priority priority, Supplier<CompletableFuture<T>> task) {
+        return submit(host, new Handle(priority), task);
+    }
+
+    /** Jak wyżej, z priorytetem wspólnym dla kilku prób, który można później podnieść. */
+    public <T> CompletableFuture<T> submit(String host, Handle handle, Supplier<CompletableFuture<T>> task) {
+        Ticket<T> ticket;
+        synchronized (this) {
+            ticket = new Ticket<>(hosts.computeIfAbsent(host, h -> new Host()), handle, task);
+            ticket.host.queues.get(ticket.priority).add(ticket);
+            queued.merge(ticket.priority, 1, Integer::sum);
+        }
+        ticket.result.whenComplete((value, error) -> {
+            if (!ticket.result.isCancelled()) return;
+            CompletableFuture<T> running;
+            synchronized (this) {
+                if (ticket.host.queues.get(ticket.priority).remove(ticket)) queued.merge(ticket.priority, -1, Integer::sum);
+                running = ticket.running;
+            }
+            if (running != null) running.cancel(true);
+        });
+        drain();
+        return ticket.result;
+    }
+
+    /**
+     * Podnosi priorytet do {@code priority} (obniżyć się nie da). Próby czekające jeszcze w kolejce
+     * przechodzą na koniec wyższego pasa, a kolejne próby tego pobrania trafiają już do niego.
+     */
+    public void promote(Handle handle, Priority priority) {
+        synchronized (this) {
+            Priority from = handle.priority;
+            if (priority.compareTo(from) >= 0) return;
+            handle.priority = priority;
+            for (Host host : hosts.values()) {
+                Iterator<Ticket<?>> it = host.queues.get(from).iterator();
+                while (it.hasNext()) {
+                    Ticket<?> ticket = it.next();
+                    if (ticket.handle != handle) continue;
+                    it.remove();
+                    ticket.priority = priority;
+                    host.queues.get(priority).add(ticket);
+                    queued.merge(from, -1, Integer::sum);
+                    queued.merge(priority, 1, Integer::sum);
+                }
+            }
+        }
+        Metrics.getInstance().increment("queue.promoted");
+        drain();
+    }
+
+    public synchronized int queueDepth(Priority priority) {
+        return queued.get(priority);
+    }
+
+    public synchronized int inFlight() {
+        int total = 0;
+        for (Host host : hosts.values()) total += host.inFlight;
+        return total;
+    }
+
+    private void drain() {
+        List<Ticket<?>> ready = new ArrayList<>();
+        synchronized (this) {
+            refill();
+            for (Priority priority : Priority.values()) {
+                // Pasy poza interaktywnym zostawiają jeden slot i część żetonów dla żądań użytkownika
+                boolean reserved = priority != Priority.INTERACTIVE;
+                long cap = reserved ? (long) limits.maxConcurrentPerHost() - 1 : limits.maxConcurrentPerHost();
+                double needed = reserved ? 1 + reservedTokens : 1;
+                for (Host host : hosts.values()) {
+                    ArrayDeque<Ticket<?>> queue = host.queues.get(priority);
+                    while (!queue.isEmpty() && host.inFlight < Math.max(cap, 1)) {
+                        if (tokens < needed) {
+                            scheduleDrain((needed - tokens) / limits.permitsPerSecond());
+                            break;
+                        }
+                        Ticket<?> ticket = queue.poll();
+                        queued.merge(priority, -1, Integer::sum);
+                        tokens -= 1;
+                        host.inFlight++;
+                        ready.add(ticket);
+                    }
+                }
+            }
+        }
+        for (Ticket<?> ticket : ready) start(ticket);
+    }
+
+    private <T> void start(Ticket<T> ticket) {
+        Metrics.getInstance().record("queue." + ticket.priority.name().toLowerCase(Locale.ROOT), System.nanoTime() - ticket.queuedAtNanos);
+        CompletableFuture<T> running;
+        try {
+            running = ticket.task.get();
+        } catch (RuntimeException e) {
+            running = CompletableFuture.failedFuture(e);
+        }
+        synchronized (this) {
+            ticket.running = running;
+        }
+        if (ticket.result.isCancelled()) running.cancel(true);
+        running.whenComplete((value, error) -> {
+            synchronized (this) {
+                ticket.host.inFlight--;
+            }
+            if (error != null) ticket.result.completeExceptionally(error);
+            else ticket.result.complete(value);
+            drain();
+        });
+    }
+
+    private void refill() {
+        if (Double.isInfinite(limits.permitsPerSecond())) {
+            tokens = limits.burst();
+            return;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(limits.burst(), tokens + (now - lastRefillNanos) / 1e9 * limits.permitsPerSecond());
+        lastRefillNanos = now;
+    }
+
+    // Jedno opóźnione opróżnienie na raz, gdy czekamy na żetony
+    private void scheduleDrain(double seconds) {
+        if (drainScheduled) return;
+        drainScheduled = true;
+        long micros = Math.max(1, (long) Math.ceil(seconds * 1e6));
+        CompletableFuture.delayedExecutor(micros, TimeUnit.MICROSECONDS).execute(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "RequestScheduler[" + name + ", " + limits + "]";
+    }
+}
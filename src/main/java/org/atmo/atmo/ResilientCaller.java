@@ -0,0 +1,322 @@
+package org.atmo.atmo;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Odporne wywołania jednego upstreamu: zapytanie zapasowe (hedging) po czasie równym p95 etapu,
+ * ponowienia z losowym odstępem ograniczone budżetem oraz bezpiecznik, który przy awarii
+ * odrzuca wywołania od razu, zamiast czekać na timeouty.
+ */
+public class ResilientCaller {
+
+    public record Policy(
+            int maxAttempts,
+            Duration baseBackoff,
+            Duration maxBackoff,
+            boolean hedging,
+            Duration minHedgeDelay,
+            Duration defaultHedgeDelay,
+            double retryRatio,
+            double minRetriesPerSecond,
+            int failureThreshold,
+            Duration openDuration
+    ) {
+        public static Policy defaults() {
+            return new Policy(3, Duration.ofMillis(100), Duration.ofSeconds(2),
+                    !"false".equals(System.getProperty("atmo.hedging")),
+                    Duration.ofMillis(50), Duration.ofSeconds(1),
+                    0.2, 1.0, 5, Duration.ofSeconds(30));
+        }
+
+        public Policy withOpenDuration(Duration openDuration) {
+            return new Policy(maxAttempts, baseBackoff, maxBackoff, hedging, minHedgeDelay, defaultHedgeDelay,
+                    retryRatio, minRetriesPerSecond, failureThreshold, openDuration);
+        }
+
+        public Policy withHedging(boolean hedging) {
+            return new Policy(maxAttempts, baseBackoff, maxBackoff, hedging, minHedgeDelay, defaultHedgeDelay,
+                    retryRatio, minRetriesPerSecond, failureThreshold, openDuration);
+        }
+    }
+
+    /** Odpowiedź HTTP inna niż 200; ponawiamy tylko 429 i 5xx. */
+    public static class HttpStatusException extends IOException {
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("Open-Meteo zwróciło status " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int statusCode() { return statusCode; }
+    }
+
+    /** Treść odpowiedzi nie daje się odczytać (zły JSON, niezgodny kształt) - ponowienie zwróciłoby to samo. */
+    public static class MalformedResponseException extends IOException {
+        public MalformedResponseException(Throwable cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /** Bezpiecznik jest otwarty - wywołanie odrzucone bez wysyłania żądania. */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String upstream) {
+            super("Bezpiecznik otwarty dla " + upstream);
+        }
+    }
+
+    private final String name;
+    private final Policy policy;
+    private final Executor executor;
+    private final RetryBudget budget;
+    private final CircuitBreaker breaker;
+
+    public ResilientCaller(String name, Policy policy, Executor executor) {
+        this.name = name;
+        this.policy = policy;
+        this.executor = executor;
+        this.budget = new RetryBudget(policy.retryRatio(), policy.minRetriesPerSecond());
+        this.breaker = new CircuitBreaker(policy.failureThreshold(), policy.openDuration());
+    }
+
+    public CircuitBreaker.State circuitState() { return breaker.state(); }
+
+    /**
+     * Wywołuje {@code attempt} (każde wywołanie to nowe żądanie) aż do sukcesu, błędu nie do ponowienia
+     * albo wyczerpania prób/budżetu. Anulowanie wyniku anuluje wszystkie próby w locie.
+     * Zapytanie zapasowe wysyłamy tylko, gdy {@code hedge} (ruch interaktywny) - tło nie zużywa na nie limitów.
+     */
+    public <T> CompletableFuture<T> call(String stage, boolean hedge, Supplier<CompletableFuture<T>> attempt) {
+        budget.deposit();
+        Call<T> call = new Call<>(stage, hedge, attempt);
+        call.launch(false);
+        call.result.whenComplete((value, error) -> {
+            if (call.result.isCancelled()) call.cancelAll();
+        });
+        return call.result;
+    }
+
+    private final class Call<T> {
+        private final String stage;
+        private final boolean hedging;
+        private final Supplier<CompletableFuture<T>> attempt;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> inFlight = new ArrayList<>();
+        private int attempts;
+        private boolean hedged;
+
+        Call(String stage, boolean hedging, Supplier<CompletableFuture<T>> attempt) {
+            this.stage = stage;
+            this.hedging = hedging;
+            this.attempt = attempt;
+        }
+
+        void launch(boolean hedge) {
+            CompletableFuture<T> f;
+            synchronized (this) {
+                if (result.isDone()) return;
+                if (!breaker.tryAcquire()) {
+                    // Zapasowe zapytanie po prostu się nie odbywa; pierwsze kończy wywołanie od razu
+                    if (inFlight.isEmpty()) {
+                        Metrics.getInstance().increment("circuit.rejected");
+                        result.completeExceptionally(new CircuitOpenException(name));
+                    }
+                    return;
+                }
+                attempts++;
+                try {
+                    f = attempt.get();
+                } catch (RuntimeException e) {
+                    breaker.release();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                inFlight.add(f);
+            }
+            f.whenComplete((value, error) -> completed(f, value, error, hedge));
+            if (!hedge) scheduleHedge();
+        }
+
+        private void scheduleHedge() {
+            if (!policy.hedging() || !hedging || hedged) return;
+            long delay = hedgeDelayMillis();
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(() -> {
+                synchronized (this) {
+                    if (result.isDone() || hedged || inFlight.isEmpty()) return;
+                    if (!budget.tryWithdraw()) {
+                        Metrics.getInstance().increment("http.hedge.budgetExhausted");
+                        return;
+                    }
+                    hedged = true;
+                }
+                Metrics.getInstance().increment("http.hedge");
+                launch(true);
+            });
+        }
+
+        private long hedgeDelayMillis() {
+            LatencyHistogram histogram = Metrics.getInstance().histogram(stage + ".http");
+            long millis = histogram.count() < 20
+                    ? policy.defaultHedgeDelay().toMillis()
+                    : histogram.percentileMicros(0.95) / 1000;
+            return Math.max(policy.minHedgeDelay().toMillis(), millis);
+        }
+
+        private void completed(CompletableFuture<T> f, T value, Throwable error, boolean hedge) {
+            if (f.isCancelled()) {
+                breaker.release();
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (cause == null || !isRetryable(cause)) breaker.onSuccess();
+            else breaker.onFailure();
+
+            boolean retry = false;
+            synchronized (this) {
+                inFlight.remove(f);
+                if (result.isDone()) return;
+                if (cause == null) {
+                    if (hedge) Metrics.getInstance().increment("http.hedge.win");
+                    // Przegraną próbę anulujemy, zanim wołający dostanie wynik
+                    cancelAll();
+                    result.complete(value);
+                    return;
+                }
+                // Druga próba jeszcze trwa - może się udać, więc na razie nie ponawiamy
+                if (!inFlight.isEmpty()) return;
+                if (isRetryable(cause) && attempts < policy.maxAttempts()) {
+                    if (budget.tryWithdraw()) retry = true;
+                    else Metrics.getInstance().increment("http.retry.budgetExhausted");
+                }
+                if (!retry) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+            }
+            Metrics.getInstance().increment("http.retry");
+            CompletableFuture.delayedExecutor(backoffMillis(attempts), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> launch(false));
+        }
+
+        void cancelAll() {
+            List<CompletableFuture<T>> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            for (CompletableFuture<T> f : pending) f.cancel(true);
+        }
+    }
+
+    // "Full jitter": losowo z [0, min(max, base * 2^(próba-1))]
+    long backoffMillis(int attempt) {
+        long cap = Math.min(policy.maxBackoff().toMillis(), policy.baseBackoff().toMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof CircuitOpenException || error instanceof MalformedResponseException) return false;
+        if (error instanceof HttpStatusException status) return status.statusCode() == 429 || status.statusCode() >= 500;
+        return error instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        return error;
+    }
+
+    /**
+     * Ponowienia i zapytania zapasowe mogą stanowić najwyżej {@code ratio} zwykłego ruchu
+     * (plus mała stała rezerwa), więc przy awarii upstreamu nie zwielokrotniamy obciążenia.
+     */
+    static final class RetryBudget {
+        private static final double MAX_TOKENS = 20;
+
+        private final double ratio;
+        private final double reservePerSecond;
+        private double tokens = MAX_TOKENS / 2;
+        private long lastRefillNanos = System.nanoTime();
+
+        RetryBudget(double ratio, double reservePerSecond) {
+            this.ratio = ratio;
+            this.reservePerSecond = reservePerSecond;
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(MAX_TOKENS, tokens + ratio);
+        }
+
+        synchronized boolean tryWithdraw() {
+            long now = System.nanoTime();
+            tokens = Math.min(MAX_TOKENS, tokens + (now - lastRefillNanos) / 1e9 * reservePerSecond);
+            lastRefillNanos = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Po {@code failureThreshold} kolejnych błędach otwiera się na {@code openDuration};
+     * potem przepuszcza jedno próbne żądanie (półotwarty) i zależnie od wyniku zamyka się albo otwiera ponownie.
+     */
+    public static final class CircuitBreaker {
+        public enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openNanos;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAtNanos;
+        private boolean probeInFlight;
+
+        CircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        public synchronized State state() { return state; }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.CLOSED) return true;
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < openNanos) return false;
+                state = State.HALF_OPEN;
+            } else if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+
+        // Próba anulowana (np. przegrany hedging) - nie mówi nic o stanie upstreamu
+        synchronized void release() {
+            probeInFlight = false;
+        }
+
+        synchronized void onSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            probeInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            probeInFlight = false;
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                if (state == State.CLOSED) Metrics.getInstance().increment("circuit.open");
+                state = State.OPEN;
+                openedAtNanos = System.nanoTime();
+            }
+        }
+    }
+}
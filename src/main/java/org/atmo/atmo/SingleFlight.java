@@ -0,0 +1,118 @@
+package org.atmo.atmo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Scala równoczesne wywołania o tym samym kluczu w jedno wykonanie.
+ * Wywołanie jest anulowane dopiero, gdy zrezygnują z niego wszyscy oczekujący.
+ */
+public class SingleFlight<K, V> {
+
+    public record Stats(long executions, long coalesced, int inFlight) {}
+
+    private static final class Flight<V> {
+        final AtomicInteger waiters = new AtomicInteger(1);
+        final Object tag;
+        // Istnieje od chwili wstawienia lotu do mapy - dołączający nie czekają, aż lider wystartuje wywołanie
+        final CompletableFuture<V> source = new CompletableFuture<>();
+
+        Flight(Object tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final String name;
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Każdy oczekujący dostaje własny future - jego anulowanie oznacza rezygnację
+     * tylko tego oczekującego, a nie całego lotu.
+     */
+    public CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> call) {
+        return submit(key, null, call, null);
+    }
+
+    /**
+     * Lot niesie znacznik lidera ({@code tag}); kto dołącza do trwającego lotu, dostaje go w {@code onJoin},
+     * np. żeby podnieść priorytet wspólnego żądania. Dla danego klucza znaczniki muszą mieć ten sam typ.
+     */
+    public <T> CompletableFuture<V> submit(K key, T tag, Supplier<CompletableFuture<V>> call, Consumer<? super T> onJoin) {
+        Flight<V> flight = join(key, tag, call, onJoin);
+        CompletableFuture<V> view = new CompletableFuture<>();
+        flight.source.whenComplete((value, error) -> {
+            if (error == null) view.complete(value);
+            else view.completeExceptionally(error instanceof CompletionException c && c.getCause() != null ? c.getCause() : error);
+        });
+        view.whenComplete((value, error) -> {
+            if (view.isCancelled()) leave(key, flight);
+        });
+        return view;
+    }
+
+    public Stats stats() {
+        return new Stats(executions.get(), coalesced.get(), flights.size());
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + stats();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Flight<V> join(K key, T tag, Supplier<CompletableFuture<V>> call, Consumer<? super T> onJoin) {
+        while (true) {
+            Flight<V> existing = flights.get(key);
+            if (existing != null) {
+                // Lot porzucony przez wszystkich (waiters == 0) nie przyjmuje nowych pasażerów
+                if (existing.waiters.getAndUpdate(w -> w == 0 ? 0 : w + 1) > 0) {
+                    coalesced.incrementAndGet();
+                    if (onJoin != null) onJoin.accept((T) existing.tag);
+                    return existing;
+                }
+                flights.remove(key, existing);
+                continue;
+            }
+
+            Flight<V> flight = new Flight<>(tag);
+            if (flights.putIfAbsent(key, flight) != null) continue;
+
+            executions.incrementAndGet();
+            CompletableFuture<V> running;
+            try {
+                running = call.get();
+            } catch (Throwable t) {
+                running = CompletableFuture.failedFuture(t);
+            }
+            CompletableFuture<V> started = running;
+            started.whenComplete((value, error) -> {
+                // Zdejmujemy lot przed oddaniem wyniku - kto przyjdzie po nim, wystartuje nowe wywołanie
+                flights.remove(key, flight);
+                if (error == null) flight.source.complete(value);
+                else flight.source.completeExceptionally(error);
+            });
+            // Rezygnacja wszystkich oczekujących anuluje wynik lotu, a ten - samo wywołanie
+            flight.source.whenComplete((value, error) -> {
+                if (flight.source.isCancelled()) started.cancel(true);
+            });
+            return flight;
+        }
+    }
+
+    private void leave(K key, Flight<V> flight) {
+        if (flight.waiters.decrementAndGet() > 0) return;
+        flights.remove(key, flight);
+        flight.source.cancel(true);
+    }
+}
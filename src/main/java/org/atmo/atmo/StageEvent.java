@@ -0,0 +1,35 @@
+package org.atmo.atmo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Zdarzenie JFR dla jednego etapu ładowania (geokodowanie, HTTP, parsowanie, render).
+ * Nagrywanie: java -XX:StartFlightRecording:filename=atmo.jfr ... ; bez nagrywania koszt jest pomijalny.
+ */
+@Name("org.atmo.Stage")
+@Label("Etap ładowania pogody")
+@Category("Atmo")
+@Description("Czas jednego etapu ładowania danych pogodowych")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    @Label("Etap")
+    String stage;
+
+    @Label("Szczegóły")
+    String detail;
+
+    @Label("Sukces")
+    boolean success;
+
+    // Pomiary z Metrics.record zaczęły się przed utworzeniem zdarzenia - wtedy tylko to pole niesie ich czas
+    @Label("Zmierzony czas")
+    @Timespan(Timespan.NANOSECONDS)
+    long measured;
+}
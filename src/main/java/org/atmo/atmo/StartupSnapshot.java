@@ -0,0 +1,85 @@
+package org.atmo.atmo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ostatni stan aplikacji (miasto, współrzędne, prognoza, ulubione) zapisywany przy zamknięciu.
+ * Przy starcie rysujemy go od razu w pierwszej klatce, a świeże dane dociągamy w tle.
+ */
+public record StartupSnapshot(
+        String query,
+        WeatherService.Coordinates coordinates,
+        WeatherService.WeatherData data,
+        List<String> favorites,
+        long savedAtMillis
+) {
+    private static final int MAGIC = 0x41545353; // "ATSS"
+    private static final int VERSION = 1;
+
+    public static final Path DEFAULT_FILE = Paths.get(System.getProperty("atmo.snapshot", "last-state.bin"));
+
+    public StartupSnapshot {
+        favorites = List.copyOf(favorites);
+    }
+
+    public void save(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(savedAtMillis);
+                out.writeUTF(query);
+                out.writeBoolean(coordinates != null);
+                if (coordinates != null) {
+                    out.writeDouble(coordinates.latitude());
+                    out.writeDouble(coordinates.longitude());
+                    out.writeUTF(coordinates.locationName());
+                }
+                ForecastCache.writeData(out, data);
+                out.writeInt(favorites.size());
+                for (String city : favorites) out.writeUTF(city);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Wczytuje migawkę; null, gdy pliku nie ma albo jest uszkodzony lub w innej wersji. */
+    public static StartupSnapshot load(Path file) {
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            long savedAt = in.readLong();
+            String query = in.readUTF();
+            WeatherService.Coordinates coordinates = in.readBoolean()
+                    ? new WeatherService.Coordinates(in.readDouble(), in.readDouble(), in.readUTF())
+                    : null;
+            WeatherService.WeatherData data = ForecastCache.readData(in);
+            int count = in.readInt();
+            List<String> favorites = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) favorites.add(in.readUTF());
+            return new StartupSnapshot(query, coordinates, data, favorites, savedAt);
+        } catch (Exception e) {
+            System.err.println("Pominięto uszkodzoną migawkę startową: " + e.getMessage());
+            return null;
+        }
+    }
+}
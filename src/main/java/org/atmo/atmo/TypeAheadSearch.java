@@ -0,0 +1,103 @@
+package org.atmo.atmo;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Podpowiedzi miast w trakcie pisania. Wyniki z pamięci podręcznej i lokalnego indeksu
+ * pokazujemy od razu, a do API idzie jedno zapytanie dopiero po przerwie w pisaniu.
+ * Każdy kolejny znak anuluje zapytanie w locie, więc w danej chwili trwa najwyżej jedno.
+ */
+public class TypeAheadSearch {
+
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(250);
+
+    private final WeatherService weatherService;
+    private final Executor debounce;
+    private final Executor callbackExecutor;
+    private final Consumer<List<WeatherService.Place>> onResults;
+    private long generation;
+    private CompletableFuture<List<WeatherService.Place>> inFlight;
+
+    public TypeAheadSearch(WeatherService weatherService, Duration debounce, Executor callbackExecutor,
+                           Consumer<List<WeatherService.Place>> onResults) {
+        this.weatherService = weatherService;
+        this.debounce = CompletableFuture.delayedExecutor(debounce.toMillis(), TimeUnit.MILLISECONDS);
+        this.callbackExecutor = callbackExecutor;
+        this.onResults = onResults;
+    }
+
+    /** Wywoływane przy każdej zmianie tekstu; wyniki trafiają do odbiorcy na {@code callbackExecutor}. */
+    public void onInput(String text) {
+        long token;
+        synchronized (this) {
+            token = ++generation;
+            cancelInFlight();
+        }
+
+        List<WeatherService.Place> cached = weatherService.cachedPlaces(text == null ? "" : text);
+        if (cached != null) {
+            Metrics.getInstance().increment("suggest.cached");
+            deliver(token, cached);
+            return;
+        }
+
+        List<WeatherService.Place> local = weatherService.localPlaces(text, WeatherService.SUGGESTIONS);
+        if (!local.isEmpty()) deliver(token, local);
+        debounce.execute(() -> search(token, text, local));
+    }
+
+    /** Porzuca oczekujące podpowiedzi, np. po zatwierdzeniu wyszukiwania. */
+    public void cancel() {
+        synchronized (this) {
+            generation++;
+            cancelInFlight();
+        }
+    }
+
+    private void search(long token, String text, List<WeatherService.Place> local) {
+        CompletableFuture<List<WeatherService.Place>> request;
+        synchronized (this) {
+            // W czasie przerwy przyszedł kolejny znak - to zapytanie już nikogo nie interesuje
+            if (token != generation) return;
+            request = weatherService.searchPlacesAsync(text);
+            inFlight = request;
+        }
+        request.whenComplete((places, error) -> {
+            if (error == null) {
+                // Pusta odpowiedź nie zastępuje trafień z lokalnego indeksu
+                if (!places.isEmpty() || local.isEmpty()) deliver(token, places);
+            } else if (!(unwrap(error) instanceof CancellationException)) {
+                System.err.println("Błąd podpowiedzi dla \"" + text + "\": " + unwrap(error).getMessage());
+            }
+        });
+    }
+
+    private void cancelInFlight() {
+        if (inFlight != null) inFlight.cancel(true);
+        inFlight = null;
+    }
+
+    private synchronized boolean isCurrent(long token) {
+        return token == generation;
+    }
+
+    // Token sprawdzamy też na wątku odbiorcy - nowszy znak mógł przyjść w międzyczasie
+    private void deliver(long token, List<WeatherService.Place> places) {
+        if (!isCurrent(token)) return;
+        callbackExecutor.execute(() -> {
+            if (isCurrent(token)) onResults.accept(places);
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        return error;
+    }
+}
@@ -3,144 +3,728 @@ package org.atmo.atmo;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class WeatherService {
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    static final String GEOCODING_BASE_URL = "https://geocoding-api.open-meteo.com";
+    static final String FORECAST_BASE_URL = "https://api.open-meteo.com";
+    static final int BATCH_SIZE = 50;
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(15);
+    public static final int SUGGESTIONS = 8;
+    public static final int MIN_SEARCH_LENGTH = 2;
+    // Od 3 znaków API dopasowuje po prefiksie; 2 znaki to tylko dokładne trafienia
+    private static final int PREFIX_MATCH_LENGTH = 3;
+    private static final int PLACE_CACHE_SIZE = 256;
+
+    // Wirtualne wątki: klient HTTP i parsowanie ciał odpowiedzi nie zajmują wątków platformowych
+    private final ExecutorService httpExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("weather-http-", 0).factory());
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .executor(httpExecutor)
+            .build();
+    private final ForecastCache forecastCache;
+    private final Gazetteer gazetteer;
+    private final String geocodingBaseUrl;
+    private final String forecastBaseUrl;
+    private final SingleFlight<String, Coordinates> geocodeFlights = new SingleFlight<>("geocode");
+    private final SingleFlight<ForecastCache.Key, WeatherData> forecastFlights = new SingleFlight<>("forecast");
+    private final Map<String, Coordinates> coordinatesCache = new ConcurrentHashMap<>();
+    private final Map<String, List<Place>> placeCache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Place>> eldest) {
+            return size() > PLACE_CACHE_SIZE;
+        }
+    };
+    private final Set<ForecastCache.Key> refreshing = ConcurrentHashMap.newKeySet();
+    private volatile Consumer<WeatherData> onBackgroundRefresh;
+    private volatile ObjLongConsumer<WeatherData> onFetched;
+    private final ResilientCaller geocodingCaller;
+    private final ResilientCaller forecastCaller;
+    private final RequestScheduler scheduler;
+
+    public WeatherService() {
+        this(ForecastCache.createDefault(), Gazetteer.loadDefault());
+    }
+
+    // Adresy API można podmienić (np. na OpenMeteoStubServer): -Datmo.geocodingUrl=... -Datmo.forecastUrl=...
+    public WeatherService(ForecastCache forecastCache, Gazetteer gazetteer) {
+        this(forecastCache, gazetteer,
+                System.getProperty("atmo.geocodingUrl", GEOCODING_BASE_URL),
+                System.getProperty("atmo.forecastUrl", FORECAST_BASE_URL));
+    }
+
+    public WeatherService(ForecastCache forecastCache, Gazetteer gazetteer, String geocodingBaseUrl, String forecastBaseUrl) {
+        this(forecastCache, gazetteer, geocodingBaseUrl, forecastBaseUrl, ResilientCaller.Policy.defaults());
+    }
+
+    public WeatherService(ForecastCache forecastCache, Gazetteer gazetteer, String geocodingBaseUrl, String forecastBaseUrl,
+                          ResilientCaller.Policy policy) {
+        // Limity Open-Meteo dotyczą tylko prawdziwego API; lokalna atrapa dostaje własną kolejkę bez limitów
+        this(forecastCache, gazetteer, geocodingBaseUrl, forecastBaseUrl, policy,
+                isOpenMeteo(geocodingBaseUrl) || isOpenMeteo(forecastBaseUrl)
+                        ? RequestScheduler.getInstance()
+                        : new RequestScheduler("local", RequestScheduler.Limits.unlimited()));
+    }
+
+    public WeatherService(ForecastCache forecastCache, Gazetteer gazetteer, String geocodingBaseUrl, String forecastBaseUrl,
+                          ResilientCaller.Policy policy, RequestScheduler scheduler) {
+        this.scheduler = scheduler;
+        // Osobny bezpiecznik i budżet ponowień dla każdego z dwóch API
+        this.geocodingCaller = new ResilientCaller("geokodowanie", policy, httpExecutor);
+        this.forecastCaller = new ResilientCaller("prognoza", policy, httpExecutor);
+        this.forecastCache = forecastCache;
+        this.gazetteer = gazetteer;
+        this.geocodingBaseUrl = stripTrailingSlash(geocodingBaseUrl);
+        this.forecastBaseUrl = stripTrailingSlash(forecastBaseUrl);
+    }
+
+    private static boolean isOpenMeteo(String url) {
+        String host = URI.create(url).getHost();
+        return host != null && host.endsWith("open-meteo.com");
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
 
     public record Coordinates(double latitude, double longitude, String locationName) {}
 
+    /** Wynik wyszukiwania miejscowości; region (admin1) odróżnia miasta o tej samej nazwie. */
+    public record Place(String name, String admin1, String country, double latitude, double longitude) {
+        public Coordinates coordinates() {
+            return new Coordinates(latitude, longitude, country.isEmpty() ? name : name + " (" + country + ")");
+        }
+
+        public String label() {
+            StringJoiner label = new StringJoiner(", ");
+            label.add(name);
+            if (!admin1.isEmpty() && !admin1.equals(name)) label.add(admin1);
+            if (!country.isEmpty()) label.add(country);
+            return label.toString();
+        }
+    }
+
     public record WeatherData(
             String city,
             double currentTemp,
             WeatherCondition currentCondition,
-            List<HourlyForecast> hourlyForecasts,
-            List<DailyForecast> dailyForecasts
-    ) {}
+            ForecastSeries hourly,
+            ForecastSeries daily
+    ) {
+        public static final int HOURLY_WINDOW = 24;
+        public static final int DAILY_WINDOW = 7;
+
+        public WeatherData withCity(String city) {
+            if (city.equals(this.city)) return this;
+            return new WeatherData(city, currentTemp, currentCondition, hourly, daily);
+        }
+
+        public ForecastSeries hourlyWindow(long nowEpochSecond) {
+            int start = hourly.indexAtOrAfter(nowEpochSecond);
+            if (start == hourly.size()) start = 0;
+            return hourly.slice(start, Math.min(start + HOURLY_WINDOW, hourly.size()));
+        }
+
+        // Adaptery dla widoku opartego o listy rekordów
+        public List<HourlyForecast> hourlyForecasts() {
+            return hourlyForecasts(Instant.now().getEpochSecond());
+        }
+
+        public List<HourlyForecast> hourlyForecasts(long nowEpochSecond) {
+            ForecastSeries window = hourlyWindow(nowEpochSecond);
+            List<HourlyForecast> list = new ArrayList<>(window.size());
+            for (int i = 0; i < window.size(); i++) {
+                list.add(new HourlyForecast(window.hourLabel(i), window.temperature(i), window.condition(i)));
+            }
+            return list;
+        }
+
+        // Pierwszy dzień, który jeszcze się nie skończył
+        public ForecastSeries dailyWindow(long nowEpochSecond) {
+            int start = daily.indexAtOrAfter(nowEpochSecond - 86_400L + 1);
+            if (start == daily.size()) start = 0;
+            return daily.slice(start, Math.min(start + DAILY_WINDOW, daily.size()));
+        }
+
+        public List<DailyForecast> dailyForecasts() {
+            return dailyForecasts(Instant.now().getEpochSecond());
+        }
+
+        public List<DailyForecast> dailyForecasts(long nowEpochSecond) {
+            ForecastSeries window = dailyWindow(nowEpochSecond);
+            List<DailyForecast> list = new ArrayList<>(window.size());
+            for (int i = 0; i < window.size(); i++) {
+                list.add(new DailyForecast(window.dayLabel(i), window.temperature(i), window.temperatureMin(i), window.condition(i)));
+            }
+            return list;
+        }
+    }
 
     public record HourlyForecast(String time, double temp, WeatherCondition condition) {}
     public record DailyForecast(String day, double maxTemp, double minTemp, WeatherCondition condition) {}
 
+    public ForecastCache getForecastCache() { return forecastCache; }
+
+    public SingleFlight.Stats getGeocodeFlightStats() { return geocodeFlights.stats(); }
+
+    public SingleFlight.Stats getForecastFlightStats() { return forecastFlights.stats(); }
+
+    public void setOnBackgroundRefresh(Consumer<WeatherData> listener) {
+        this.onBackgroundRefresh = listener;
+    }
+
+    /**
+     * Wołany raz na każdą prognozę faktycznie pobraną z sieci (pojedynczo lub zbiorczo) z czasem
+     * odebrania odpowiedzi; trafienia w cache i dane z migawki go nie wywołują.
+     */
+    public void setOnFetched(ObjLongConsumer<WeatherData> listener) {
+        this.onFetched = listener;
+    }
+
+    private void notifyFetched(WeatherData data, long fetchedAtMillis) {
+        ObjLongConsumer<WeatherData> listener = onFetched;
+        if (listener == null) return;
+        try {
+            listener.accept(data, fetchedAtMillis);
+        } catch (RuntimeException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Rozwiązuje nazwy hostów i zestawia połączenia (TLS, HTTP/2), zanim padnie pierwsze zapytanie.
+     * Błędy są ignorowane - to tylko przyspieszenie.
+     */
+    public CompletableFuture<Void> warmUp() {
+        List<CompletableFuture<?>> warmups = new ArrayList<>();
+        for (String baseUrl : List.of(geocodingBaseUrl, forecastBaseUrl)) {
+            URI uri = URI.create(baseUrl + "/");
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(REQUEST_TIMEOUT)
+                    .build();
+            warmups.add(CompletableFuture
+                    .runAsync(() -> resolve(uri.getHost()), httpExecutor)
+                    .thenCompose(ignored -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+                    .exceptionally(e -> null));
+        }
+        return CompletableFuture.allOf(warmups.toArray(CompletableFuture[]::new));
+    }
+
+    private static void resolve(String host) {
+        try {
+            InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            System.err.println("Nie udało się rozwiązać " + host + ": " + e.getMessage());
+        }
+    }
+
+    /** Geokodowanie i prognoza jako jeden potok; null, gdy miasta nie znaleziono. */
+    public CompletableFuture<WeatherData> loadCityAsync(String cityName) {
+        return loadCityAsync(cityName, RequestScheduler.Priority.INTERACTIVE);
+    }
+
+    public CompletableFuture<WeatherData> loadCityAsync(String cityName, RequestScheduler.Priority priority) {
+        CompletableFuture<Coordinates> geocode = getCoordinatesForCityAsync(cityName, priority);
+        AtomicReference<CompletableFuture<WeatherData>> forecast = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        CompletableFuture<WeatherData> result = geocode.thenCompose(coords -> {
+            if (coords == null) return CompletableFuture.completedFuture(null);
+            CompletableFuture<WeatherData> f = getWeatherDataAsync(coords.locationName(),
+                    String.valueOf(coords.latitude()), String.valueOf(coords.longitude()), priority);
+            forecast.set(f);
+            if (cancelled.get()) f.cancel(true);
+            return f;
+        });
+        result.whenComplete((data, error) -> {
+            if (!result.isCancelled()) return;
+            cancelled.set(true);
+            geocode.cancel(true);
+            CompletableFuture<WeatherData> f = forecast.get();
+            if (f != null) f.cancel(true);
+        });
+        return result;
+    }
+
     public Coordinates getCoordinatesForCity(String cityName) throws Exception {
-        String encodedCityName = URLEncoder.encode(cityName, StandardCharsets.UTF_8);
-        String apiUrl = String.format(
-                "https://geocoding-api.open-meteo.com/v1/search?name=%s&count=1&language=pl&format=json",
-                encodedCityName
-        );
+        return await(getCoordinatesForCityAsync(cityName));
+    }
 
-        HttpRequest request = HttpRequest.newBuilder().uri(new URI(apiUrl)).GET().build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    public Coordinates getCoordinatesForCity(String cityName, RequestScheduler.Priority priority) throws Exception {
+        return await(getCoordinatesForCityAsync(cityName, priority));
+    }
 
-        JSONObject root = new JSONObject(response.body());
-        JSONArray results = root.optJSONArray("results");
+    /** Współrzędne znane bez zapytania do sieci (wcześniejsze geokodowanie); null, gdy ich brak. */
+    public Coordinates cachedCoordinates(String cityName) {
+        return coordinatesCache.get(Gazetteer.normalize(cityName));
+    }
+
+    /** Podpowiada współrzędne (np. z migawki startowej), więc kolejne ładowanie miasta pominie geokodowanie. */
+    public void rememberCoordinates(String cityName, Coordinates coords) {
+        if (coords != null) coordinatesCache.putIfAbsent(Gazetteer.normalize(cityName), coords);
+    }
 
-        if (results == null || results.isEmpty()) {
-            return null;
+    public CompletableFuture<Coordinates> getCoordinatesForCityAsync(String cityName) {
+        return getCoordinatesForCityAsync(cityName, RequestScheduler.Priority.INTERACTIVE);
+    }
+
+    public CompletableFuture<Coordinates> getCoordinatesForCityAsync(String cityName, RequestScheduler.Priority priority) {
+        String cacheKey = Gazetteer.normalize(cityName);
+        Coordinates cached = coordinatesCache.get(cacheKey);
+        if (cached != null) {
+            Metrics.getInstance().increment("geocode.memo");
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Najpierw lokalny indeks, zdalne API tylko gdy miasta w nim nie ma
+        Coordinates local = gazetteer.lookup(cityName);
+        if (local != null) {
+            Metrics.getInstance().increment("geocode.gazetteer");
+            coordinatesCache.put(cacheKey, local);
+            return CompletableFuture.completedFuture(local);
+        }
+
+        // Wyszukiwanie dołączające do geokodowania z tła podnosi jego priorytet
+        RequestScheduler.Handle handle = new RequestScheduler.Handle(priority);
+        CompletableFuture<Coordinates> remote = Metrics.getInstance().time("geocode", cityName,
+                geocodeFlights.submit(cacheKey, handle, () -> fetchCoordinatesAsync(cityName, handle),
+                        joined -> scheduler.promote(joined, priority)));
+        return linked(remote, remote.thenApply(coords -> {
+            if (coords != null) coordinatesCache.put(cacheKey, coords);
+            return coords;
+        }));
+    }
+
+    /**
+     * Podpowiedzi znane bez sieci: wynik dla tego samego prefiksu albo przefiltrowana pełna lista
+     * dla krótszego prefiksu (API zwróciło mniej niż {@value #SUGGESTIONS}, więc nic nie zostało pominięte).
+     * Null, gdy trzeba zapytać API.
+     */
+    public List<Place> cachedPlaces(String prefix) {
+        String key = Gazetteer.normalize(prefix);
+        if (key.length() < MIN_SEARCH_LENGTH) return List.of();
+        synchronized (placeCache) {
+            List<Place> exact = placeCache.get(key);
+            if (exact != null) return exact;
+            for (int n = key.length() - 1; n >= PREFIX_MATCH_LENGTH; n--) {
+                List<Place> shorter = placeCache.get(key.substring(0, n));
+                if (shorter == null) continue;
+                if (shorter.size() >= SUGGESTIONS) return null;
+                List<Place> filtered = new ArrayList<>();
+                for (Place place : shorter) {
+                    if (Gazetteer.normalize(place.name()).startsWith(key)) filtered.add(place);
+                }
+                placeCache.put(key, List.copyOf(filtered));
+                return filtered;
+            }
         }
+        return null;
+    }
 
-        JSONObject firstResult = results.getJSONObject(0);
-        double latitude = firstResult.getDouble("latitude");
-        double longitude = firstResult.getDouble("longitude");
+    /**
+     * Miejscowości z lokalnego indeksu zaczynające się od {@code prefix} - do pokazania, zanim odpowie API.
+     * Indeks nie zna regionów, więc miejscowości o tej samej nazwie odróżniają się w etykiecie współrzędnymi.
+     */
+    public List<Place> localPlaces(String prefix, int limit) {
+        List<Coordinates> found = gazetteer.search(prefix, limit);
+        Map<String, Integer> sameName = new HashMap<>();
+        for (Coordinates c : found) sameName.merge(c.locationName(), 1, Integer::sum);
 
-        String name = firstResult.getString("name");
-        String country = firstResult.optString("country", "");
+        List<Place> places = new ArrayList<>();
+        for (Coordinates c : found) {
+            String name = c.locationName();
+            int paren = name.indexOf(" (");
+            String country = paren < 0 ? "" : name.substring(paren + 2, name.length() - 1);
+            String area = sameName.get(name) > 1
+                    ? String.format(Locale.ROOT, "%.2f°, %.2f°", c.latitude(), c.longitude())
+                    : "";
+            places.add(new Place(paren < 0 ? name : name.substring(0, paren), area, country, c.latitude(), c.longitude()));
+        }
+        return places;
+    }
 
-        String fullName = name;
-        if (!country.isEmpty()) {
-            fullName += " (" + country + ")";
+    /** Do {@value #SUGGESTIONS} miejscowości pasujących do wpisanego prefiksu. Anulowanie przerywa żądanie HTTP. */
+    public CompletableFuture<List<Place>> searchPlacesAsync(String prefix) {
+        List<Place> cached = cachedPlaces(prefix);
+        if (cached != null) {
+            Metrics.getInstance().increment("suggest.memo");
+            return CompletableFuture.completedFuture(cached);
         }
+        String key = Gazetteer.normalize(prefix);
+        CompletableFuture<List<Place>> remote = Metrics.getInstance().time("geocode.suggest", prefix,
+                fetchPlacesAsync(prefix.trim(), SUGGESTIONS, new RequestScheduler.Handle(RequestScheduler.Priority.INTERACTIVE)));
+        return linked(remote, remote.thenApply(places -> {
+            synchronized (placeCache) {
+                placeCache.put(key, places);
+            }
+            return places;
+        }));
+    }
 
-        return new Coordinates(latitude, longitude, fullName);
+    private CompletableFuture<List<Place>> fetchPlacesAsync(String name, int count, RequestScheduler.Handle priority) {
+        URI uri = URI.create(String.format(
+                "%s/v1/search?name=%s&count=%d&language=pl&format=json",
+                geocodingBaseUrl, URLEncoder.encode(name, StandardCharsets.UTF_8), count
+        ));
+        return sendAsync(uri, count == 1 ? "geocode" : "geocode.suggest", priority, WeatherService::parsePlaces);
+    }
+
+    static List<Place> parsePlaces(InputStream body) throws IOException {
+        JSONObject root = new JSONObject(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        JSONArray results = root.optJSONArray("results");
+        if (results == null) return List.of();
+
+        List<Place> places = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            places.add(new Place(result.getString("name"), result.optString("admin1", ""),
+                    result.optString("country", ""), result.getDouble("latitude"), result.getDouble("longitude")));
+        }
+        return List.copyOf(places);
+    }
+
+    private CompletableFuture<Coordinates> fetchCoordinatesAsync(String cityName, RequestScheduler.Handle priority) {
+        CompletableFuture<List<Place>> places = fetchPlacesAsync(cityName, 1, priority);
+        return linked(places, places.thenApply(results -> results.isEmpty() ? null : results.get(0).coordinates()));
     }
 
     public WeatherData getWeatherData(String cityName, String latitude, String longitude) throws Exception {
-        String apiUrl = String.format(
-                "https://api.open-meteo.com/v1/forecast?latitude=%s&longitude=%s" +
-                        "&current=temperature_2m,weather_code" +
-                        "&hourly=temperature_2m,weather_code" +
-                        "&daily=weather_code,temperature_2m_max,temperature_2m_min" +
-                        "&timezone=auto",
-                latitude, longitude
-        );
+        return await(getWeatherDataAsync(cityName, latitude, longitude));
+    }
+
+    public CompletableFuture<WeatherData> getWeatherDataAsync(String cityName, String latitude, String longitude) {
+        return getWeatherDataAsync(cityName, latitude, longitude, RequestScheduler.Priority.INTERACTIVE);
+    }
+
+    public CompletableFuture<WeatherData> getWeatherDataAsync(String cityName, String latitude, String longitude,
+                                                              RequestScheduler.Priority priority) {
+        double lat = Double.parseDouble(latitude);
+        double lon = Double.parseDouble(longitude);
+
+        ForecastCache.Lookup cached = forecastCache.get(lat, lon);
+        if (cached != null) {
+            Metrics.getInstance().increment(cached.stale() ? "cache.stale" : "cache.hit");
+            // Stale-while-revalidate: oddajemy od razu to co mamy, odświeżamy w tle
+            if (cached.stale()) refreshInBackground(cityName, latitude, longitude);
+            return CompletableFuture.completedFuture(cached.data().withCity(cityName));
+        }
+
+        Metrics.getInstance().increment("cache.miss");
+        CompletableFuture<WeatherData> fetched = Metrics.getInstance().time("forecast", cityName,
+                fetchAndStore(cityName, latitude, longitude, priority));
+        return linked(fetched, fetched.handle((data, error) -> {
+            if (error == null) return data.withCity(cityName);
+            // Upstream nie działa (np. otwarty bezpiecznik) - lepsze dane sprzed godzin niż żadne
+            ForecastCache.Lookup last = error instanceof CancellationException ? null : forecastCache.getAnyAge(lat, lon);
+            if (last == null) throw error instanceof CompletionException c ? c : new CompletionException(error);
+            Metrics.getInstance().increment("cache.fallback");
+            System.err.printf("Prognoza niedostępna (%s), pokazuję dane sprzed %d min%n",
+                    rootMessage(error), last.ageMillis() / 60_000);
+            return last.data().withCity(cityName);
+        }));
+    }
+
+    public ResilientCaller.CircuitBreaker.State getForecastCircuitState() { return forecastCaller.circuitState(); }
+
+    private static String rootMessage(Throwable error) {
+        while (error.getCause() != null) error = error.getCause();
+        return error.getMessage();
+    }
 
-        HttpRequest request = HttpRequest.newBuilder().uri(new URI(apiUrl)).GET().build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    // Równoczesne pobrania tej samej lokalizacji (UI, odświeżanie w tle) dzielą jedno żądanie
+    private CompletableFuture<WeatherData> fetchAndStore(String cityName, String latitude, String longitude,
+                                                         RequestScheduler.Priority priority) {
+        double lat = Double.parseDouble(latitude);
+        double lon = Double.parseDouble(longitude);
+        // Wyszukiwanie dołączające do odświeżania z tła podnosi jego priorytet, zamiast czekać w pasie tła
+        RequestScheduler.Handle handle = new RequestScheduler.Handle(priority);
+        return forecastFlights.submit(ForecastCache.Key.of(lat, lon), handle, () -> {
+            CompletableFuture<WeatherData> fetched = sendAsync(forecastUri(latitude, longitude), "forecast", handle,
+                    body -> ForecastParser.parse(body, cityName));
+            return linked(fetched, fetched.thenApply(data -> {
+                forecastCache.put(lat, lon, data);
+                notifyFetched(data, System.currentTimeMillis());
+                return data;
+            }));
+        }, joined -> scheduler.promote(joined, priority));
+    }
 
-        JSONObject root = new JSONObject(response.body());
+    private void refreshInBackground(String cityName, String latitude, String longitude) {
+        double lat = Double.parseDouble(latitude);
+        double lon = Double.parseDouble(longitude);
+        ForecastCache.Key key = ForecastCache.Key.of(lat, lon);
+        if (!refreshing.add(key)) return;
 
-        //System.out.println(root);
+        fetchAndStore(cityName, latitude, longitude, RequestScheduler.Priority.BACKGROUND).whenComplete((data, error) -> {
+            refreshing.remove(key);
+            if (error != null) {
+                System.err.println("Odświeżenie w tle nie powiodło się: " + rootMessage(error));
+                return;
+            }
+            Consumer<WeatherData> listener = onBackgroundRefresh;
+            if (listener != null) listener.accept(data.withCity(cityName));
+        });
+    }
 
-        JSONObject current = root.getJSONObject("current");
-        double currentTemp = current.getDouble("temperature_2m");
-        int currentCode = current.getInt("weather_code");
+    public Map<Coordinates, WeatherData> getWeatherDataBatch(List<Coordinates> locations) {
+        return getWeatherDataBatch(locations, forecastCache.getFreshTtl());
+    }
 
-        JSONObject hourly = root.getJSONObject("hourly");
-        JSONArray hourlyTimes = hourly.getJSONArray("time");
-        JSONArray hourlyTemps = hourly.getJSONArray("temperature_2m");
-        JSONArray hourlyCodes = hourly.getJSONArray("weather_code");
+    public Map<Coordinates, WeatherData> getWeatherDataBatch(List<Coordinates> locations, Duration refreshAfter) {
+        return getWeatherDataBatch(locations, refreshAfter, RequestScheduler.Priority.BACKGROUND);
+    }
 
-        List<HourlyForecast> hourlyList = new ArrayList<>();
-        int currentHourIndex = findCurrentHourIndex(hourlyTimes);
-        for (int i = currentHourIndex; i < currentHourIndex + 24 && i < hourlyTimes.length(); i++) {
-            String timeStr = hourlyTimes.getString(i);
-            LocalDateTime dt = LocalDateTime.parse(timeStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            String hourFormatted = dt.format(DateTimeFormatter.ofPattern("HH:mm"));
+    // Jedno żądanie na BATCH_SIZE lokalizacji; wpisy z cache młodsze niż refreshAfter są pomijane
+    public Map<Coordinates, WeatherData> getWeatherDataBatch(List<Coordinates> locations, Duration refreshAfter,
+                                                            RequestScheduler.Priority priority) {
+        Map<Coordinates, WeatherData> results = new LinkedHashMap<>();
+        List<Coordinates> missing = new ArrayList<>();
+        for (Coordinates c : locations) {
+            ForecastCache.Lookup cached = forecastCache.get(c.latitude(), c.longitude());
+            if (cached != null && !cached.stale() && cached.ageMillis() < refreshAfter.toMillis()) {
+                results.put(c, cached.data().withCity(c.locationName()));
+            } else {
+                missing.add(c);
+            }
+        }
 
-            hourlyList.add(new HourlyForecast(
-                    hourFormatted,
-                    hourlyTemps.getDouble(i),
-                    WeatherCondition.fromCode(hourlyCodes.getInt(i))
-            ));
+        // Wszystkie paczki wysyłamy od razu, czekamy dopiero na wyniki
+        List<List<Coordinates>> chunks = new ArrayList<>();
+        List<CompletableFuture<List<WeatherData>>> pending = new ArrayList<>();
+        for (int from = 0; from < missing.size(); from += BATCH_SIZE) {
+            List<Coordinates> chunk = missing.subList(from, Math.min(from + BATCH_SIZE, missing.size()));
+            chunks.add(chunk);
+            pending.add(fetchWeatherDataBatchAsync(chunk, priority));
         }
 
-        JSONObject daily = root.getJSONObject("daily");
-        JSONArray dailyTimes = daily.getJSONArray("time");
-        JSONArray dailyMax = daily.getJSONArray("temperature_2m_max");
-        JSONArray dailyMin = daily.getJSONArray("temperature_2m_min");
-        JSONArray dailyCodes = daily.getJSONArray("weather_code");
+        for (int n = 0; n < chunks.size(); n++) {
+            List<Coordinates> chunk = chunks.get(n);
+            try {
+                List<WeatherData> fetched = await(pending.get(n));
+                long fetchedAt = System.currentTimeMillis();
+                for (int i = 0; i < chunk.size(); i++) {
+                    Coordinates c = chunk.get(i);
+                    forecastCache.put(c.latitude(), c.longitude(), fetched.get(i));
+                    results.put(c, fetched.get(i));
+                    notifyFetched(fetched.get(i), fetchedAt);
+                }
+            } catch (InterruptedException e) {
+                pending.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // Open-Meteo odrzuca całe żądanie, gdy choć jedna lokalizacja jest błędna - wtedy pojedynczo
+                System.err.println("Pobranie zbiorcze nie powiodło się (" + e.getMessage() + "), pobieram pojedynczo");
+                for (Coordinates c : chunk) {
+                    try {
+                        results.put(c, await(getWeatherDataAsync(c.locationName(),
+                                String.valueOf(c.latitude()), String.valueOf(c.longitude()), priority)));
+                    } catch (Exception single) {
+                        System.err.println("Nie udało się pobrać prognozy dla " + c.locationName() + ": " + single.getMessage());
+                    }
+                }
+            }
+        }
 
-        List<DailyForecast> dailyList = new ArrayList<>();
-        for (int i = 0; i < dailyTimes.length(); i++) {
-            String dateStr = dailyTimes.getString(i);
-            LocalDate date = LocalDate.parse(dateStr);
-            String dayName = translateDayOfWeek(date.getDayOfWeek().getValue());
+        // Kolejność wyników jak w liście wejściowej
+        Map<Coordinates, WeatherData> ordered = new LinkedHashMap<>();
+        for (Coordinates c : locations) {
+            WeatherData data = results.get(c);
+            if (data != null) ordered.put(c, data);
+        }
+        return ordered;
+    }
 
-            dailyList.add(new DailyForecast(
-                    dayName + " " + date.format(DateTimeFormatter.ofPattern("dd.MM")),
-                    dailyMax.getDouble(i),
-                    dailyMin.getDouble(i),
-                    WeatherCondition.fromCode(dailyCodes.getInt(i))
-            ));
+    private CompletableFuture<List<WeatherData>> fetchWeatherDataBatchAsync(List<Coordinates> chunk, RequestScheduler.Priority priority) {
+        StringJoiner latitudes = new StringJoiner(",");
+        StringJoiner longitudes = new StringJoiner(",");
+        List<String> names = new ArrayList<>(chunk.size());
+        for (Coordinates c : chunk) {
+            latitudes.add(String.valueOf(c.latitude()));
+            longitudes.add(String.valueOf(c.longitude()));
+            names.add(c.locationName());
         }
 
-        return new WeatherData(cityName, currentTemp, WeatherCondition.fromCode(currentCode), hourlyList, dailyList);
+        return sendAsync(forecastUri(latitudes.toString(), longitudes.toString()), "batch", priority, body -> {
+            List<WeatherData> parsed = ForecastParser.parseBatch(body, names);
+            if (parsed.size() != chunk.size()) {
+                throw new IOException("Oczekiwano " + chunk.size() + " lokalizacji, otrzymano " + parsed.size());
+            }
+            return parsed;
+        });
     }
 
-    private int findCurrentHourIndex(JSONArray times) {
-        LocalDateTime now = LocalDateTime.now();
-        for(int i=0; i<times.length(); i++) {
-            LocalDateTime dt = LocalDateTime.parse(times.getString(i));
-            if(dt.isAfter(now) || dt.isEqual(now)) return i;
+    private URI forecastUri(String latitudes, String longitudes) {
+        return URI.create(String.format(
+                "%s/v1/forecast?latitude=%s&longitude=%s" +
+                        "&current=temperature_2m,weather_code" +
+                        "&hourly=temperature_2m,weather_code,precipitation,wind_speed_10m" +
+                        "&daily=weather_code,temperature_2m_max,temperature_2m_min,precipitation_sum,wind_speed_10m_max" +
+                        "&forecast_days=16" +
+                        "&timezone=auto" +
+                        "&timeformat=unixtime",
+                forecastBaseUrl, latitudes, longitudes
+        ));
+    }
+
+    @FunctionalInterface
+    private interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
+    }
+
+    /**
+     * Nagłówki przychodzą przez sendAsync, a ciało czytamy strumieniowo na wątku wirtualnym,
+     * więc oczekiwanie na sieć nie blokuje żadnego wątku platformowego.
+     */
+    private <T> CompletableFuture<T> sendAsync(URI uri, String stage, RequestScheduler.Priority priority, BodyParser<T> parser) {
+        return sendAsync(uri, stage, new RequestScheduler.Handle(priority), parser);
+    }
+
+    private <T> CompletableFuture<T> sendAsync(URI uri, String stage, RequestScheduler.Handle priority, BodyParser<T> parser) {
+        ResilientCaller caller = stage.startsWith("geocode") ? geocodingCaller : forecastCaller;
+        // Zapasowe zapytania tylko dla pojedynczych żądań użytkownika - powielenie paczki 50 lokalizacji to za dużo
+        boolean hedge = priority.priority() == RequestScheduler.Priority.INTERACTIVE && !stage.equals("batch");
+        // Każda próba (także ponowienie i zapytanie zapasowe) przechodzi przez kolejkę i limit tempa
+        return caller.call(stage, hedge,
+                () -> scheduler.submit(uri.getAuthority(), priority, () -> attemptAsync(uri, stage, parser)));
+    }
+
+    // Jedna próba: żądanie, status, dekompresja i parsowanie
+    private <T> CompletableFuture<T> attemptAsync(URI uri, String stage, BodyParser<T> parser) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Accept-Encoding", "gzip, deflate")
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+
+        Metrics metrics = Metrics.getInstance();
+        CompletableFuture<HttpResponse<InputStream>> response = metrics.time(stage + ".http", uri.getPath(),
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()));
+        CompletableFuture<T> result = linked(response, response.thenApplyAsync(r -> {
+            try (ReadTrackingStream raw = new ReadTrackingStream(r.body())) {
+                if (r.statusCode() != 200) {
+                    metrics.increment("http.error." + r.statusCode());
+                    throw new ResilientCaller.HttpStatusException(r.statusCode());
+                }
+                Metrics.Timer parse = metrics.start(stage + ".parse", uri.getPath());
+                boolean parsed = false;
+                try {
+                    T value = parser.parse(decode(r, raw));
+                    parsed = true;
+                    return value;
+                } catch (IOException e) {
+                    // Zerwane połączenie można ponowić; błędna treść przy ponowieniu będzie taka sama
+                    if (raw.failed()) throw e;
+                    metrics.increment("http.malformed");
+                    throw new ResilientCaller.MalformedResponseException(e);
+                } finally {
+                    parse.stop(parsed);
+                }
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, httpExecutor));
+        result.whenComplete((value, error) -> {
+            if (error != null && !result.isCancelled()) metrics.increment("http.error");
+        });
+        return result;
+    }
+
+    // Odróżnia błąd odczytu z połączenia od błędu w samej treści odpowiedzi
+    private static final class ReadTrackingStream extends FilterInputStream {
+        private boolean failed;
+
+        ReadTrackingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
         }
-        return 0;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        boolean failed() { return failed; }
     }
 
-    private String translateDayOfWeek(int day) {
-        return switch (day) {
-            case 1 -> "Pon"; case 2 -> "Wt"; case 3 -> "Śr";
-            case 4 -> "Czw"; case 5 -> "Pt"; case 6 -> "Sob"; case 7 -> "Ndz";
-            default -> "";
+    private static InputStream decode(HttpResponse<?> response, InputStream raw) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(raw, 8192);
+            case "deflate" -> new InflaterInputStream(raw);
+            default -> raw;
         };
     }
-}
\ No newline at end of file
+
+    // Anulowanie etapu pochodnego anuluje też źródło - aż do samego żądania HTTP
+    private static <T, U> CompletableFuture<U> linked(CompletableFuture<T> source, CompletableFuture<U> derived) {
+        derived.whenComplete((value, error) -> {
+            if (derived.isCancelled()) source.cancel(true);
+        });
+        return derived;
+    }
+
+    // Blokujące wersje metod: przerwanie wątku anuluje future (i żądanie)
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchExportTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<BatchExport.Location> locations(int count) {
+        List<BatchExport.Location> locations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            locations.add(BatchExport.parseLocation(i, (50 + i) + ",1" + i + ",Miasto " + i));
+        }
+        return locations;
+    }
+
+    private static BatchExport export(OpenMeteoStubServer stub) {
+        WeatherService service = new WeatherService(new ForecastCache(16, Duration.ZERO, Duration.ZERO, null),
+                Gazetteer.empty(), stub.baseUrl(), stub.baseUrl());
+        return new BatchExport(service, 2, 2);
+    }
+
+    @Test
+    void resumeTruncatesRowsWrittenAfterLastCommittedBatch() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO).withForecastDays(1))) {
+            Path output = dir.resolve("out.csv");
+            export(stub).run(locations(2), output, BatchExport.Format.CSV);
+            long committed = Files.size(output);
+
+            // Awaria: wiersze paczki zapisane bez zatwierdzenia, urwana linia wyjścia i urwany wpis postępu
+            Path progress = dir.resolve("out.csv.progress");
+            Files.writeString(progress, BatchExport.progressLine(committed, List.of(0, 1)) + "99", StandardCharsets.UTF_8);
+            Files.writeString(output, "2,Miasto 2,52.0,12.0,1700000000,1.0,0.0,0.0,3\n3,Mia", StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+
+            export(stub).run(locations(4), output, BatchExport.Format.CSV);
+
+            List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+            assertTrue(lines.get(0).startsWith("index,"));
+            Map<Integer, Integer> rowsPerIndex = new TreeMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                assertEquals(9, line.split(",").length, "urwana linia: " + line);
+                rowsPerIndex.merge(Integer.parseInt(line.substring(0, line.indexOf(','))), 1, Integer::sum);
+            }
+            assertEquals(List.of(0, 1, 2, 3), List.copyOf(rowsPerIndex.keySet()));
+            assertEquals(1, rowsPerIndex.values().stream().distinct().count(), "zdublowane wiersze: " + rowsPerIndex);
+            assertFalse(Files.exists(progress));
+        }
+    }
+
+    @Test
+    void jsonEscapesControlCharacters() {
+        assertEquals("A\\u0001B\\n\\t\\\"C\\\\", BatchExport.escapeJson("A\u0001B\n\t\"C\\"));
+    }
+}
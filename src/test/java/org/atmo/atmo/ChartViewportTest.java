@@ -0,0 +1,46 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChartViewportTest {
+
+    private static final double WIDTH = 360;
+
+    @Test
+    void zoomKeepsPointUnderCursorInPlace() {
+        ChartViewport viewport = new ChartViewport(24);
+        viewport.setCount(384);
+        viewport.reset(100);
+
+        double anchor = 0.25;
+        double before = viewport.index(anchor * WIDTH, WIDTH);
+        assertTrue(viewport.zoomAt(1 / 1.25, anchor));
+        assertEquals(30, viewport.span(), 1e-9);
+        assertEquals(before, viewport.index(anchor * WIDTH, WIDTH), 1e-9);
+
+        // Maksymalne oddalenie pokazuje całą serię, nie więcej
+        for (int i = 0; i < 50; i++) viewport.zoomAt(1 / 1.25, 0.5);
+        assertEquals(384, viewport.span(), 1e-9);
+        assertEquals(0, viewport.start(), 1e-9);
+        assertEquals(383, viewport.lastVisible());
+    }
+
+    @Test
+    void panningStopsAtSeriesEdges() {
+        ChartViewport viewport = new ChartViewport(24);
+        viewport.setCount(384);
+        viewport.reset(0);
+
+        assertFalse(viewport.panBy(-10));
+        assertTrue(viewport.panBy(1000));
+        assertEquals(360, viewport.start(), 1e-9);
+        assertEquals(383, viewport.lastVisible());
+
+        // Krótsza seria niż domyślny zakres - widok zaczyna się od początku
+        viewport.setCount(10);
+        assertEquals(0, viewport.start(), 1e-9);
+        assertEquals(9, viewport.lastVisible());
+    }
+}
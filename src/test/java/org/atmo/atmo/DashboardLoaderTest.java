@@ -0,0 +1,50 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DashboardLoaderTest {
+
+    @Test
+    void visibleRowsAreFetchedWithOneBatchRequest() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO).withForecastDays(2))) {
+            WeatherService service = new WeatherService(new ForecastCache(256, Duration.ofMinutes(10), Duration.ofHours(1), null),
+                    Gazetteer.empty(), stub.baseUrl(), stub.baseUrl());
+            AtomicInteger fetched = new AtomicInteger();
+            service.setOnFetched((data, fetchedAt) -> fetched.incrementAndGet());
+            BlockingQueue<Map<String, WeatherService.WeatherData>> loads = new LinkedBlockingQueue<>();
+            DashboardLoader loader = new DashboardLoader(service, Duration.ofMillis(50), Runnable::run, loads::add);
+
+            List<String> visible = new ArrayList<>();
+            for (int i = 0; i < 12; i++) visible.add("Miasto " + i);
+            // Przewinięcie: każda komórka prosi osobno, część dwukrotnie
+            for (String city : visible) loader.request(city);
+            for (String city : visible.subList(0, 4)) loader.request(city);
+
+            Map<String, WeatherService.WeatherData> loaded = loads.poll(5, TimeUnit.SECONDS);
+            assertNotNull(loaded);
+            assertEquals(visible, new ArrayList<>(loaded.keySet()));
+            assertEquals(1, stub.forecastRequests());
+            assertEquals(12, fetched.get());
+
+            // Świeże dane z cache - kolejne odświeżenie widocznych wierszy nie idzie do sieci
+            for (String city : visible) loader.request(city);
+            assertEquals(12, loads.poll(5, TimeUnit.SECONDS).size());
+            assertEquals(1, stub.forecastRequests());
+            // Trafienia w cache nie są zgłaszane jako pobrania (np. do historii prognoz)
+            assertEquals(12, fetched.get());
+            loader.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FavoritesManagerConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int CITIES_PER_WRITER = 500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentWritersAndReadersKeepIndexConsistent() throws Exception {
+        Path file = dir.resolve("favorites.json");
+        try (FavoritesManager manager = new FavoritesManager(file, Duration.ofMillis(20))) {
+            ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 2);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < CITIES_PER_WRITER; i++) {
+                        manager.addFavorite("Miasto " + writer + "-" + i);
+                        // Ta sama nazwa w innej wielkości liter nie może utworzyć duplikatu
+                        manager.addFavorite("MIASTO " + writer + "-" + i);
+                        if (i % 2 == 1) manager.removeFavorite("miasto " + writer + "-" + i);
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < 2; r++) {
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 2_000; i++) {
+                        List<String> snapshot = manager.getFavorites();
+                        assertEquals(snapshot.size(), new HashSet<>(snapshot).size());
+                        for (String city : snapshot) {
+                            if (!city.startsWith("Miasto ")) fail("Nieoczekiwany wpis: " + city);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : tasks) task.get(30, TimeUnit.SECONDS);
+            pool.shutdown();
+
+            Set<String> expected = new HashSet<>();
+            for (int w = 0; w < WRITERS; w++) {
+                for (int i = 0; i < CITIES_PER_WRITER; i += 2) expected.add("Miasto " + w + "-" + i);
+            }
+            assertEquals(expected, new HashSet<>(manager.getFavorites()));
+            assertTrue(manager.isFavorite("miasto 3-10"));
+            assertFalse(manager.isFavorite("Miasto 3-11"));
+
+            manager.flush();
+            try (FavoritesManager reloaded = new FavoritesManager(file, Duration.ofMillis(20))) {
+                assertEquals(manager.getFavorites(), reloaded.getFavorites());
+            }
+        }
+    }
+
+    @Test
+    void writesAreDebouncedAndLeaveNoTempFiles() throws Exception {
+        Path file = dir.resolve("favorites.json");
+        try (FavoritesManager manager = new FavoritesManager(file, Duration.ofMinutes(1))) {
+            for (int i = 0; i < 100; i++) manager.addFavorite("Miasto " + i);
+            assertFalse(Files.exists(file), "zapis powinien czekać na koniec serii zmian");
+
+            manager.flush();
+            assertTrue(Files.exists(file));
+            try (var files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+        }
+        try (FavoritesManager reloaded = new FavoritesManager(file, Duration.ZERO)) {
+            assertEquals(100, reloaded.getFavorites().size());
+        }
+    }
+
+    @Test
+    void closeWritesPendingChangesAndLaterChangesStayInMemory() throws Exception {
+        Path file = dir.resolve("favorites.json");
+        FavoritesManager manager = new FavoritesManager(file, Duration.ofHours(1));
+        manager.addFavorite("Szczecin");
+        manager.close();
+
+        assertTrue(Files.exists(file), "zamknięcie powinno zapisać zaległe zmiany");
+        // Zmiana po zamknięciu zostaje w pamięci i nie wywraca wołającego
+        manager.addFavorite("Gdańsk");
+        assertTrue(manager.isFavorite("Gdańsk"));
+        try (FavoritesManager reloaded = new FavoritesManager(file, Duration.ZERO)) {
+            assertEquals(List.of("Szczecin"), reloaded.getFavorites());
+        }
+    }
+}
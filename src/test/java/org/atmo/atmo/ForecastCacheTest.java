@@ -0,0 +1,59 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static WeatherService.WeatherData data(String city, float temperature) {
+        ForecastSeries hourly = new ForecastSeries(new long[]{1_700_000_000L, 1_700_003_600L},
+                new float[]{temperature, temperature + 1}, null, null, null, new byte[]{0, 61}, 3600);
+        return new WeatherService.WeatherData(city, temperature, WeatherCondition.CLEAR, hourly, ForecastSeries.EMPTY);
+    }
+
+    private ForecastCache cache() {
+        return new ForecastCache(16, Duration.ofMinutes(10), Duration.ofHours(1), dir);
+    }
+
+    @Test
+    void entriesAreWrittenInBackgroundAndSurviveRestart() throws Exception {
+        ForecastCache cache = cache();
+        for (int i = 0; i < 20; i++) cache.put(53.43, 14.55, data("Szczecin", i));
+        cache.flush();
+
+        // Jeden plik z najnowszym wpisem, bez pozostałości po plikach tymczasowych
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+        ForecastCache.Lookup lookup = cache().get(53.43, 14.55);
+        assertNotNull(lookup);
+        assertFalse(lookup.stale());
+        assertEquals(19f, lookup.data().hourly().temperature(0));
+    }
+
+    @Test
+    void truncatedFileIsDeletedAndTreatedAsMiss() throws Exception {
+        ForecastCache cache = cache();
+        cache.put(53.43, 14.55, data("Szczecin", 5));
+        cache.flush();
+        Path file;
+        try (var files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertNull(cache().get(53.43, 14.55));
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,198 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastHistoryStoreTest {
+
+    // 2024-01-31T00:00:00Z - prognoza przechodzi przez granicę miesiąca
+    private static final long START = 1_706_659_200L;
+
+    @TempDir
+    Path dir;
+
+    private static ForecastSeries hourly(long start, int hours, float base) {
+        long[] times = new long[hours];
+        float[] temps = new float[hours];
+        byte[] codes = new byte[hours];
+        for (int i = 0; i < hours; i++) {
+            times[i] = start + i * 3600L;
+            temps[i] = base + i;
+            codes[i] = (byte) (i % 2 == 0 ? 3 : 61);
+        }
+        return new ForecastSeries(times, temps, null, null, null, codes, 3600);
+    }
+
+    // Wartości zależą tylko od godziny, więc przesunięta prognoza pokrywa się z poprzednią
+    private static ForecastSeries sixteenDays(long start) {
+        long[] times = new long[384];
+        float[] temps = new float[384];
+        byte[] codes = new byte[384];
+        for (int i = 0; i < 384; i++) {
+            times[i] = start + i * 3600L;
+            long hour = (times[i] - START) / 3600;
+            temps[i] = hour % 30;
+            codes[i] = (byte) (hour % 2 == 0 ? 3 : 61);
+        }
+        return new ForecastSeries(times, temps, null, null, null, codes, 3600);
+    }
+
+    @Test
+    void rangeQueryAcrossSegmentsPrefersLatestForecast() throws Exception {
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            store.append("Szczecin", hourly(START, 48, 0), 1_000);
+            store.append("Gdańsk", hourly(START, 48, 100), 1_000);
+            // Nowsza prognoza nadpisuje godziny od 12 w górę
+            store.append("Szczecin", hourly(START + 12 * 3600L, 48, 50), 2_000);
+
+            ForecastSeries series = store.query("szczecin", START, START + 60 * 3600L);
+            assertEquals(60, series.size());
+            assertEquals(START, series.time(0));
+            assertEquals(11f, series.temperature(11));
+            assertEquals(50f, series.temperature(12));
+            assertEquals(3600, series.utcOffsetSeconds());
+            assertEquals(2, Files.list(dir).count());
+
+            ForecastSeries slice = store.query("Gdańsk", START + 24 * 3600L, START + 26 * 3600L);
+            assertEquals(2, slice.size());
+            assertEquals(124f, slice.temperature(0));
+        }
+    }
+
+    @Test
+    void truncatedTailIsDroppedOnReopen() throws Exception {
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            store.append("Szczecin", hourly(START, 10, 0), 1_000);
+            store.append("Szczecin", hourly(START + 10 * 3600L, 10, 10), 2_000);
+        }
+        Path segment = dir.resolve("2024-01.seg");
+        long secondRecord = ForecastHistoryStore.HEADER_SIZE + 8 + 32 + 10 * 9;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(secondRecord + 8 + 40);
+            file.write(0x7f); // uszkodzona treść drugiego rekordu
+        }
+
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            assertEquals(10, store.query("Szczecin", START, START + 20 * 3600L).size());
+            store.append("Szczecin", hourly(START + 10 * 3600L, 5, 10), 3_000);
+        }
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            assertEquals(15, store.query("Szczecin", START, START + 20 * 3600L).size());
+        }
+    }
+
+    @Test
+    void compactionKeepsQueryResultsAndRetentionDropsOldMonths() throws Exception {
+        Instant now = Instant.ofEpochSecond(START).plus(Duration.ofDays(90));
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            for (int fetch = 0; fetch < 20; fetch++) {
+                // Każde pobranie zmienia prognozę dla wszystkich godzin, więc nic nie jest pomijane przy zapisie
+                store.append("Szczecin", hourly(START - 48 * 3600L + fetch * 3600L, 72, 2 * fetch), fetch);
+            }
+            ForecastSeries before = store.query("Szczecin", 0, Long.MAX_VALUE);
+            long bytesBefore = store.bytesUsed();
+
+            assertEquals(2, store.compact());
+            assertEquals(0, store.compact());
+            ForecastSeries after = store.query("Szczecin", 0, Long.MAX_VALUE);
+            assertEquals(before.size(), after.size());
+            for (int i = 0; i < before.size(); i++) {
+                assertEquals(before.time(i), after.time(i));
+                assertEquals(before.temperature(i), after.temperature(i));
+                assertEquals(before.weatherCode(i), after.weatherCode(i));
+            }
+            assertTrue(store.bytesUsed() < bytesBefore / 5, "kompakcja powinna usunąć duplikaty");
+
+            assertEquals(1, store.retain(Duration.ofDays(70), now));
+            assertTrue(store.query("Szczecin", 0, START).isEmpty());
+            assertFalse(store.query("Szczecin", START, Long.MAX_VALUE).isEmpty());
+        }
+    }
+
+    @Test
+    void compactedMonthCanBeReadAndAppendedAgain() throws Exception {
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            store.append("Szczecin", hourly(START - 24 * 3600L, 12, 0), 1_000);
+            store.append("Szczecin", hourly(START - 24 * 3600L, 12, 10), 2_000);
+            assertEquals(10f, store.query("Szczecin", 0, START).temperature(0));
+
+            assertEquals(1, store.compact());
+            // Po podmianie pliku odczyt i zapis idą do nowego mapowania tego samego miesiąca
+            assertEquals(12, store.query("Szczecin", 0, START).size());
+            store.append("Szczecin", hourly(START - 12 * 3600L, 12, 50), 3_000);
+            ForecastSeries series = store.query("Szczecin", 0, START);
+            assertEquals(24, series.size());
+            assertEquals(10f, series.temperature(0));
+            assertEquals(50f, series.temperature(12));
+
+            // Dopisek zdejmuje znacznik kompakcji, więc miesiąc zostanie przepisany ponownie
+            assertEquals(1, store.compact());
+            assertEquals(24, store.query("Szczecin", 0, START).size());
+            try (var files = Files.list(dir)) {
+                assertEquals(1, files.count(), "po kompakcji nie powinny zostać pliki tymczasowe");
+            }
+        }
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            assertEquals(24, store.query("Szczecin", 0, START).size());
+        }
+    }
+
+    @Test
+    void repeatedFetchesOfUnchangedForecastDoNotGrowHistory() throws Exception {
+        // Ulubione odświeżane co kilka minut: ta sama 16-dniowa prognoza, co godzinę przesunięta o jeden punkt
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            store.append("Szczecin", sixteenDays(START), 0);
+            long first = store.bytesUsed();
+            for (int fetch = 1; fetch <= 100; fetch++) {
+                store.append("Szczecin", sixteenDays(START), fetch * 300_000L);
+            }
+            assertEquals(first, store.bytesUsed());
+
+            for (int hour = 1; hour <= 24; hour++) {
+                store.append("Szczecin", sixteenDays(START + hour * 3600L), hour * 3_600_000L);
+            }
+            assertTrue(store.bytesUsed() < first + 24 * 64, "dopisane powinny być tylko nowe godziny");
+        }
+        // Po ponownym otwarciu porównanie idzie z danymi z dysku
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            long used = store.bytesUsed();
+            store.append("Szczecin", sixteenDays(START + 24 * 3600L), 100_000_000L);
+            assertEquals(used, store.bytesUsed());
+
+            // Bieżący miesiąc też jest kompaktowany - rekordy z nowymi godzinami zlewają się w jeden
+            assertEquals(2, store.compact());
+            assertTrue(store.bytesUsed() < used);
+            assertEquals(384 + 24, store.query("Szczecin", 0, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void compactionWritesNextGenerationAndOlderFileIsRemovedLater() throws Exception {
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            store.append("Szczecin", hourly(START - 24 * 3600L, 12, 0), 1_000);
+            store.append("Szczecin", hourly(START - 24 * 3600L, 12, 10), 2_000);
+            assertEquals(1, store.compact());
+        }
+        Path compacted = dir.resolve("2024-01.1.seg");
+        assertTrue(Files.exists(compacted));
+        assertFalse(Files.exists(dir.resolve("2024-01.seg")));
+        // Plik bez rezerwy na zapas - rozmiar to dokładnie nagłówek i jeden rekord
+        assertEquals(ForecastHistoryStore.HEADER_SIZE + 8 + 32 + 12 * 9, Files.size(compacted));
+
+        // Stara generacja, której nie udało się skasować, nie przesłania nowej i znika przy otwarciu
+        Files.copy(compacted, dir.resolve("2024-01.seg"));
+        try (ForecastHistoryStore store = new ForecastHistoryStore(dir)) {
+            assertEquals(10f, store.query("Szczecin", 0, START).temperature(0));
+            assertFalse(Files.exists(dir.resolve("2024-01.seg")));
+            assertTrue(Files.exists(compacted));
+        }
+    }
+}
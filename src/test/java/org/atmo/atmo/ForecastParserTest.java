@@ -0,0 +1,225 @@
+package org.atmo.atmo;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastParserTest {
+
+    private static final String FIXTURE = "forecast-szczecin.json";
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 11, 14, 45, 12);
+
+    @Test
+    void matchesDomParserOnFixture() throws Exception {
+        String json = readFixture();
+
+        Reference expected = parseWithDom(json, NOW);
+        WeatherService.WeatherData actual = ForecastParser.parse(stream(json), "Szczecin (Polska)");
+
+        assertMatches(expected, actual, NOW);
+        assertEquals(168, actual.hourly().size());
+        assertEquals("15:00", actual.hourlyForecasts(epochSecond(NOW)).get(0).time());
+    }
+
+    @Test
+    void matchesDomParserForEveryHourOfTheWeek() throws Exception {
+        String json = readFixture();
+        for (int h = 0; h < 170; h += 7) {
+            LocalDateTime now = LocalDateTime.of(2024, 3, 11, 0, 0).plusHours(h).plusMinutes(h % 60);
+            assertMatches(parseWithDom(json, now), ForecastParser.parse(stream(json), "X"), now);
+        }
+    }
+
+    @Test
+    void dailyWindowStartsAtTodayMidFixture() throws Exception {
+        WeatherService.WeatherData data = ForecastParser.parse(stream(readFixture()), "X");
+
+        List<WeatherService.DailyForecast> daily = data.dailyForecasts(epochSecond(LocalDateTime.of(2024, 3, 13, 23, 59)));
+        assertEquals(5, daily.size());
+        assertEquals("Śr 13.03", daily.get(0).day());
+        assertEquals("Czw 14.03", data.dailyForecasts(epochSecond(LocalDateTime.of(2024, 3, 14, 0, 0))).get(0).day());
+    }
+
+    @Test
+    void survivesTinyReadBuffers() throws Exception {
+        String json = readFixture();
+        WeatherService.WeatherData expected = ForecastParser.parse(stream(json), "X");
+
+        for (int size : new int[] {1, 3, 7, 64}) {
+            JsonPullParser parser = new JsonPullParser(stream(json), size);
+            assertEquals(JsonPullParser.Token.START_OBJECT, parser.next());
+            assertEquals(expected, ForecastParser.parseLocation(parser, "X"), "buffer=" + size);
+        }
+    }
+
+    @Test
+    void parsesMultiLocationArray() throws Exception {
+        String json = readFixture();
+        WeatherService.WeatherData single = ForecastParser.parse(stream(json), "A");
+
+        List<WeatherService.WeatherData> batch = ForecastParser.parseBatch(stream("[" + json + "," + json + "]"), List.of("A", "B"));
+
+        assertEquals(2, batch.size());
+        assertEquals(single, batch.get(0));
+        assertEquals("B", batch.get(1).city());
+        assertEquals(single.hourly(), batch.get(1).hourly());
+    }
+
+    @Test
+    void unixTimeFormatMatchesIsoFormat() throws Exception {
+        // 2024-03-11T00:00 i 01:00 przy +01:00; doba jako lokalna północ w UTC
+        String iso = """
+                {"utc_offset_seconds":3600,
+                 "hourly":{"time":["2024-03-11T00:00","2024-03-11T01:00"],"temperature_2m":[1.5,2.0],"weather_code":[0,3]},
+                 "daily":{"time":["2024-03-11"],"temperature_2m_max":[4.0],"temperature_2m_min":[-1.0],"weather_code":[61]}}
+                """;
+        String unix = """
+                {"utc_offset_seconds":3600,
+                 "hourly":{"time":[1710111600,1710115200],"temperature_2m":[1.5,2.0],"weather_code":[0,3]},
+                 "daily":{"time":[1710111600],"temperature_2m_max":[4.0],"temperature_2m_min":[-1.0],"weather_code":[61]}}
+                """;
+
+        WeatherService.WeatherData expected = ForecastParser.parse(stream(iso), "X");
+        WeatherService.WeatherData actual = ForecastParser.parse(stream(unix), "X");
+
+        assertEquals(expected.hourly(), actual.hourly());
+        assertEquals(expected.daily(), actual.daily());
+        assertEquals("Pon 11.03", actual.daily().dayLabel(0));
+    }
+
+    @Test
+    void skipsUnknownNestedFields() throws Exception {
+        String json = """
+                {"extra":{"a":[1,{"b":"}"}],"c":null},"flags":[true,false],
+                 "current":{"time":"2024-03-11T14:45","temperature_2m":-2.5,"note":"a\\"b","weather_code":71},
+                 "hourly":{"time":[],"temperature_2m":[],"weather_code":[]},
+                 "daily":{"time":[],"temperature_2m_max":[],"temperature_2m_min":[],"weather_code":[]}}
+                """;
+
+        WeatherService.WeatherData data = ForecastParser.parse(stream(json), "X");
+
+        assertEquals(-2.5, data.currentTemp());
+        assertEquals(WeatherCondition.SNOW_MODERATE, data.currentCondition());
+        assertTrue(data.hourly().isEmpty());
+    }
+
+    // Fixture ma utc_offset_seconds = 3600, a "now" jest czasem lokalnym lokalizacji
+    private static long epochSecond(LocalDateTime localNow) {
+        return localNow.toEpochSecond(ZoneOffset.ofHours(1));
+    }
+
+    private static void assertMatches(Reference expected, WeatherService.WeatherData actual, LocalDateTime now) {
+        assertEquals(expected.currentTemp(), actual.currentTemp());
+        assertEquals(expected.currentCondition(), actual.currentCondition());
+
+        // Okno liczone od pierwszej pełnej godziny nie wcześniejszej niż "teraz" (sekundy w górę)
+        long nowSeconds = epochSecond(now) + (now.getNano() > 0 ? 1 : 0);
+        List<WeatherService.HourlyForecast> hourly = actual.hourlyForecasts(nowSeconds);
+        assertEquals(expected.hourly().size(), hourly.size(), "now=" + now);
+        for (int i = 0; i < hourly.size(); i++) {
+            assertEquals(expected.hourly().get(i).time(), hourly.get(i).time());
+            assertEquals(expected.hourly().get(i).temp(), hourly.get(i).temp(), 1e-5);
+            assertEquals(expected.hourly().get(i).condition(), hourly.get(i).condition());
+        }
+
+        List<WeatherService.DailyForecast> daily = actual.dailyForecasts(nowSeconds);
+        assertEquals(expected.daily().size(), daily.size(), "now=" + now);
+        for (int i = 0; i < daily.size(); i++) {
+            assertEquals(expected.daily().get(i).day(), daily.get(i).day());
+            assertEquals(expected.daily().get(i).maxTemp(), daily.get(i).maxTemp(), 1e-5);
+            assertEquals(expected.daily().get(i).minTemp(), daily.get(i).minTemp(), 1e-5);
+            assertEquals(expected.daily().get(i).condition(), daily.get(i).condition());
+        }
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readFixture() throws Exception {
+        try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream(FIXTURE))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private record Reference(
+            double currentTemp,
+            WeatherCondition currentCondition,
+            List<WeatherService.HourlyForecast> hourly,
+            List<WeatherService.DailyForecast> daily
+    ) {}
+
+    // Poprzednia implementacja oparta o org.json - punkt odniesienia dla parsera strumieniowego
+    private static Reference parseWithDom(String body, LocalDateTime now) {
+        JSONObject root = new JSONObject(body);
+
+        JSONObject current = root.getJSONObject("current");
+        double currentTemp = current.getDouble("temperature_2m");
+        int currentCode = current.getInt("weather_code");
+
+        JSONObject hourly = root.getJSONObject("hourly");
+        JSONArray hourlyTimes = hourly.getJSONArray("time");
+        JSONArray hourlyTemps = hourly.getJSONArray("temperature_2m");
+        JSONArray hourlyCodes = hourly.getJSONArray("weather_code");
+
+        int currentHourIndex = 0;
+        for (int i = 0; i < hourlyTimes.length(); i++) {
+            LocalDateTime dt = LocalDateTime.parse(hourlyTimes.getString(i));
+            if (dt.isAfter(now) || dt.isEqual(now)) {
+                currentHourIndex = i;
+                break;
+            }
+        }
+
+        List<WeatherService.HourlyForecast> hourlyList = new ArrayList<>();
+        for (int i = currentHourIndex; i < currentHourIndex + 24 && i < hourlyTimes.length(); i++) {
+            LocalDateTime dt = LocalDateTime.parse(hourlyTimes.getString(i), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+            hourlyList.add(new WeatherService.HourlyForecast(
+                    dt.format(DateTimeFormatter.ofPattern("HH:mm")),
+                    hourlyTemps.getDouble(i),
+                    WeatherCondition.fromCode(hourlyCodes.getInt(i))
+            ));
+        }
+
+        JSONObject daily = root.getJSONObject("daily");
+        JSONArray dailyTimes = daily.getJSONArray("time");
+        JSONArray dailyMax = daily.getJSONArray("temperature_2m_max");
+        JSONArray dailyMin = daily.getJSONArray("temperature_2m_min");
+        JSONArray dailyCodes = daily.getJSONArray("weather_code");
+
+        // Okno dni zaczyna się od dnia, w którym jest "teraz"; po końcu prognozy wraca na jej początek
+        int today = 0;
+        for (int i = 0; i < dailyTimes.length(); i++) {
+            if (!LocalDate.parse(dailyTimes.getString(i)).isBefore(now.toLocalDate())) {
+                today = i;
+                break;
+            }
+        }
+
+        List<WeatherService.DailyForecast> dailyList = new ArrayList<>();
+        for (int i = today; i < today + WeatherService.WeatherData.DAILY_WINDOW && i < dailyTimes.length(); i++) {
+            LocalDate date = LocalDate.parse(dailyTimes.getString(i));
+            dailyList.add(new WeatherService.DailyForecast(
+                    ForecastParser.dayName(date.getDayOfWeek().getValue()) + " " + date.format(DateTimeFormatter.ofPattern("dd.MM")),
+                    dailyMax.getDouble(i),
+                    dailyMin.getDouble(i),
+                    WeatherCondition.fromCode(dailyCodes.getInt(i))
+            ));
+        }
+
+        return new Reference(currentTemp, WeatherCondition.fromCode(currentCode), hourlyList, dailyList);
+    }
+}
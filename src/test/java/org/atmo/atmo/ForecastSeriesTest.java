@@ -0,0 +1,112 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForecastSeriesTest {
+
+    // 2024-03-11T00:00 czasu lokalnego przy przesunięciu +01:00
+    private static final long START = 1710111600L;
+
+    private static ForecastSeries hourlySeries(int hours) {
+        long[] times = new long[hours];
+        float[] temps = new float[hours];
+        float[] rain = new float[hours];
+        byte[] codes = new byte[hours];
+        for (int i = 0; i < hours; i++) {
+            times[i] = START + i * 3600L;
+            temps[i] = i * 0.5f - 3;
+            rain[i] = i % 3 == 0 ? 0.4f : 0f;
+            codes[i] = (byte) (i % 2 == 0 ? 61 : 3);
+        }
+        return new ForecastSeries(times, temps, null, rain, null, codes, 3600);
+    }
+
+    @Test
+    void sliceIsAViewOverTheSameColumns() {
+        ForecastSeries series = hourlySeries(384);
+        ForecastSeries window = series.slice(10, 34);
+
+        assertEquals(24, window.size());
+        assertEquals(series.time(10), window.time(0));
+        assertEquals(series.temperature(33), window.temperature(23));
+        assertEquals(WeatherCondition.RAIN_MODERATE, window.condition(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> window.time(24));
+    }
+
+    @Test
+    void changedRangeCoversOnlyModifiedPoints() {
+        ForecastSeries before = hourlySeries(384);
+        ForecastSeries after = hourlySeries(384);
+        assertArrayEquals(new int[0], after.changedRange(before));
+
+        long[] times = new long[384];
+        float[] temps = new float[384];
+        byte[] codes = new byte[384];
+        float[] rain = new float[384];
+        for (int i = 0; i < 384; i++) {
+            times[i] = before.time(i);
+            temps[i] = before.temperature(i);
+            rain[i] = before.precipitation(i);
+            codes[i] = (byte) before.weatherCode(i);
+        }
+        temps[40] += 1;
+        rain[57] = 3f;
+        ForecastSeries updated = new ForecastSeries(times, temps, null, rain, null, codes, 3600);
+
+        assertArrayEquals(new int[] {40, 57}, updated.changedRange(before));
+        // Inna oś czasu - porównanie punktów nie ma sensu
+        assertNull(updated.slice(1, 384).changedRange(before.slice(0, 383)));
+    }
+
+    @Test
+    void indexAtOrAfterFindsFirstHourNotBeforeNow() {
+        ForecastSeries series = hourlySeries(384).slice(5, 300);
+
+        assertEquals(0, series.indexAtOrAfter(0));
+        assertEquals(0, series.indexAtOrAfter(series.time(0)));
+        assertEquals(1, series.indexAtOrAfter(series.time(0) + 1));
+        assertEquals(42, series.indexAtOrAfter(series.time(41) + 1800));
+        assertEquals(series.size() - 1, series.indexAtOrAfter(series.time(series.size() - 1)));
+        assertEquals(series.size(), series.indexAtOrAfter(series.time(series.size() - 1) + 1));
+    }
+
+    @Test
+    void hourlyWindowRollsWithTheClock() {
+        ForecastSeries hourly = hourlySeries(384);
+        WeatherService.WeatherData data = new WeatherService.WeatherData("X", 0, WeatherCondition.CLEAR, hourly, ForecastSeries.EMPTY);
+
+        assertEquals(hourly.time(3), data.hourlyWindow(hourly.time(2) + 60).time(0));
+        assertEquals(hourly.time(4), data.hourlyWindow(hourly.time(3) + 1).time(0));
+        assertEquals(24, data.hourlyWindow(hourly.time(100)).size());
+    }
+
+    @Test
+    void labelsUseLocationOffset() {
+        ForecastSeries series = hourlySeries(48);
+
+        assertEquals("00:00", series.hourLabel(0));
+        assertEquals("13:00", series.hourLabel(13));
+        assertEquals("Pon 11.03", series.dayLabel(0));
+        assertEquals("Wt 12.03", series.dayLabel(24));
+    }
+
+    @Test
+    void binaryRoundTripKeepsSlice() throws Exception {
+        ForecastSeries window = hourlySeries(384).slice(100, 200);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        window.writeTo(new DataOutputStream(bytes));
+        ForecastSeries restored = ForecastSeries.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(window, restored);
+        assertEquals(window.precipitation(7), restored.precipitation(7));
+        assertTrue(Float.isNaN(restored.windSpeed(0)));
+    }
+}
@@ -0,0 +1,91 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GazetteerTest {
+
+    private static final String CITIES = String.join("\n",
+            "3083829\tSzczecin\tSzczecin\t\t53.42894\t14.55302\tP\tPPLA\tPL\t\t84\t\t\t\t400990\t\t\tEurope/Warsaw\t2023-01-01",
+            "3093133\tŁódź\tLodz\t\t51.75\t19.46667\tP\tPPLA\tPL\t\t74\t\t\t\t768755\t\t\tEurope/Warsaw\t2023-01-01",
+            "5969785\tLondon\tLondon\t\t42.98339\t-81.23304\tP\tPPL\tCA\t\t08\t\t\t\t346765\t\t\tAmerica/Toronto\t2023-01-01",
+            "2643743\tLondon\tLondon\t\t51.50853\t-0.12574\tP\tPPLC\tGB\t\tENG\t\t\t\t8961989\t\t\tEurope/London\t2023-01-01",
+            "763442\tNowa Wieś\tNowa Wies\t\t52.95\t20.63\tP\tPPL\tPL\t\t78\t\t\t\t800\t\t\tEurope/Warsaw\t2023-01-01",
+            "763443\tNowa Wieś\tNowa Wies\t\t50.31\t18.46\tP\tPPL\tPL\t\t83\t\t\t\t600\t\t\tEurope/Warsaw\t2023-01-01"
+    );
+
+    @TempDir
+    static Path dir;
+
+    private static Gazetteer gazetteer;
+
+    @BeforeAll
+    static void build() throws Exception {
+        Path input = dir.resolve("cities.txt");
+        Files.writeString(input, CITIES);
+        Path index = dir.resolve("gazetteer.idx");
+        GazetteerBuilder.build(input, index);
+        gazetteer = Gazetteer.open(index);
+    }
+
+    @Test
+    void lookupIgnoresCaseAndWhitespace() {
+        WeatherService.Coordinates a = gazetteer.lookup("Szczecin");
+        WeatherService.Coordinates b = gazetteer.lookup("  szczecin ");
+
+        assertNotNull(a);
+        assertEquals(a, b);
+        assertEquals("Szczecin (Polska)", a.locationName());
+    }
+
+    @Test
+    void lookupIgnoresDiacritics() {
+        assertEquals(gazetteer.lookup("Łódź"), gazetteer.lookup("lodz"));
+    }
+
+    @Test
+    void duplicatesAreOrderedByPopulation() {
+        List<WeatherService.Coordinates> results = gazetteer.lookup("london", 5);
+
+        assertEquals(2, results.size());
+        assertEquals(51.50853, results.get(0).latitude(), 0.001);
+    }
+
+    @Test
+    void prefixSearchScansSortedIndex() {
+        List<WeatherService.Coordinates> lo = gazetteer.search("Lo", 10);
+        assertEquals(3, lo.size());
+        assertEquals("Łódź (Polska)", lo.get(0).locationName());
+
+        List<WeatherService.Coordinates> lon = gazetteer.search("lon", 10);
+        assertEquals(2, lon.size());
+        assertEquals(51.50853, lon.get(0).latitude(), 0.001);
+        assertEquals(1, gazetteer.search("lon", 1).size());
+        assertTrue(gazetteer.search("londyn", 10).isEmpty());
+
+        // Dwie różne miejscowości o tej samej nazwie nie sklejają się w jedną podpowiedź
+        List<WeatherService.Coordinates> nowa = gazetteer.search("nowa w", 10);
+        assertEquals(2, nowa.size());
+        assertNotEquals(nowa.get(0).latitude(), nowa.get(1).latitude());
+    }
+
+    @Test
+    void missingCityReturnsNull() {
+        assertNull(gazetteer.lookup("Atlantyda"));
+    }
+
+    @Test
+    void buildIsReproducible() throws Exception {
+        Path again = dir.resolve("again.idx");
+        GazetteerBuilder.build(dir.resolve("cities.txt"), again);
+
+        assertArrayEquals(Files.readAllBytes(dir.resolve("gazetteer.idx")), Files.readAllBytes(again));
+    }
+}
@@ -0,0 +1,41 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 100_000; micros++) histogram.recordNanos(micros * 1000L);
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(100_000, histogram.maxMicros());
+        assertEquals(50_000, histogram.percentileMicros(0.50), 50_000 * 0.07);
+        assertEquals(99_000, histogram.percentileMicros(0.99), 99_000 * 0.07);
+        assertEquals(99_900, histogram.percentileMicros(0.999), 99_900 * 0.07);
+    }
+
+    @Test
+    void bucketBoundsAreMonotonic() {
+        long previous = -1;
+        for (long micros = 0; micros < 10_000_000; micros = micros * 5 / 4 + 1) {
+            int bucket = LatencyHistogram.bucket(micros);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= micros, "micros=" + micros);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(0.99));
+
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+}
@@ -0,0 +1,73 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenMeteoStubServerTest {
+
+    private OpenMeteoStubServer stub;
+    private WeatherService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO)
+                .withForecastDays(3));
+        ForecastCache cache = new ForecastCache(16, Duration.ZERO, Duration.ZERO, null);
+        service = new WeatherService(cache, Gazetteer.empty(), stub.baseUrl() + "/", stub.baseUrl());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void servesForecastsForSingleAndBatchRequests() throws Exception {
+        WeatherService.WeatherData data = service.loadCityAsync("Szczecin").get();
+
+        assertEquals("Szczecin (Polska)", data.city());
+        assertEquals(72, data.hourly().size());
+        assertEquals(3, data.daily().size());
+        assertEquals(24, data.hourlyForecasts().size());
+
+        List<WeatherService.Coordinates> locations = List.of(
+                new WeatherService.Coordinates(50.0, 20.0, "A"),
+                new WeatherService.Coordinates(51.0, 17.0, "B"),
+                new WeatherService.Coordinates(52.2, 21.0, "C"));
+        Map<WeatherService.Coordinates, WeatherService.WeatherData> batch = service.getWeatherDataBatch(locations);
+
+        assertEquals(3, batch.size());
+        assertEquals(2, stub.forecastRequests());
+        assertEquals(4, stub.forecastLocations());
+    }
+
+    @Test
+    void injectedErrorsSurfaceAsIOException() {
+        stub.setConfig(stub.getConfig().withErrorRate(1.0));
+
+        Exception e = assertThrows(Exception.class, () -> service.getWeatherData("X", "50.0", "20.0"));
+        assertInstanceOf(IOException.class, e);
+        // Błąd 503 jest ponawiany aż do limitu prób
+        assertEquals(ResilientCaller.Policy.defaults().maxAttempts(), stub.injectedErrors());
+    }
+
+    @Test
+    void loadGeneratorReportsPercentiles() throws Exception {
+        LoadGenerator.Report report = LoadGenerator.run(service,
+                new LoadGenerator.Options(200, 16, 20, Duration.ZERO));
+
+        assertEquals(0, report.errors());
+        assertEquals(200, report.sortedLatenciesNanos().length);
+        assertTrue(report.percentile(0.5) <= report.percentile(0.99));
+        assertTrue(report.percentile(0.99) <= report.percentile(0.999));
+    }
+}
@@ -0,0 +1,130 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSchedulerTest {
+
+    private static final String HOST = "api.example:443";
+
+    @Test
+    void interactiveRequestsOvertakeQueuedBackgroundWork() {
+        RequestScheduler scheduler = new RequestScheduler("test-lanes",
+                new RequestScheduler.Limits(Double.POSITIVE_INFINITY, Integer.MAX_VALUE, 2));
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        scheduler.submit(HOST, RequestScheduler.Priority.BACKGROUND, () -> slow);
+
+        // Tło ma już swój jedyny slot - kolejne czekają, ostatni slot zostaje dla użytkownika
+        AtomicBoolean backgroundStarted = new AtomicBoolean();
+        CompletableFuture<String> queued = scheduler.submit(HOST, RequestScheduler.Priority.BACKGROUND, () -> {
+            backgroundStarted.set(true);
+            return CompletableFuture.completedFuture("tło");
+        });
+        assertEquals(1, scheduler.queueDepth(RequestScheduler.Priority.BACKGROUND));
+
+        CompletableFuture<String> search = scheduler.submit(HOST, RequestScheduler.Priority.INTERACTIVE,
+                () -> CompletableFuture.completedFuture("wyszukiwanie"));
+        assertEquals("wyszukiwanie", search.getNow(null));
+        assertFalse(backgroundStarted.get());
+
+        slow.complete("gotowe");
+        assertEquals("tło", queued.getNow(null));
+        assertEquals(0, scheduler.inFlight());
+    }
+
+    @Test
+    void promotedBackgroundRequestStartsInInteractiveLane() {
+        RequestScheduler scheduler = new RequestScheduler("test-promote",
+                new RequestScheduler.Limits(Double.POSITIVE_INFINITY, Integer.MAX_VALUE, 2));
+        scheduler.submit(HOST, RequestScheduler.Priority.BACKGROUND, CompletableFuture::new);
+
+        // Odświeżanie z tła czeka na slot; dołącza do niego wyszukiwanie użytkownika
+        RequestScheduler.Handle refresh = new RequestScheduler.Handle(RequestScheduler.Priority.BACKGROUND);
+        CompletableFuture<String> shared = scheduler.submit(HOST, refresh,
+                () -> CompletableFuture.completedFuture("prognoza"));
+        assertFalse(shared.isDone());
+
+        scheduler.promote(refresh, RequestScheduler.Priority.INTERACTIVE);
+        assertEquals("prognoza", shared.getNow(null));
+        assertEquals(RequestScheduler.Priority.INTERACTIVE, refresh.priority());
+        assertEquals(0, scheduler.queueDepth(RequestScheduler.Priority.BACKGROUND));
+
+        // Obniżenie priorytetu nie jest możliwe
+        scheduler.promote(refresh, RequestScheduler.Priority.BACKGROUND);
+        assertEquals(RequestScheduler.Priority.INTERACTIVE, refresh.priority());
+    }
+
+    @Test
+    void visibleLaneRunsAfterInteractiveAndBeforeBackground() {
+        RequestScheduler scheduler = new RequestScheduler("test-visible",
+                new RequestScheduler.Limits(Double.POSITIVE_INFINITY, Integer.MAX_VALUE, 2));
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        scheduler.submit(HOST, RequestScheduler.Priority.VISIBLE, () -> slow);
+
+        List<String> started = new ArrayList<>();
+        CompletableFuture<String> refresh = scheduler.submit(HOST, RequestScheduler.Priority.BACKGROUND, () -> {
+            started.add("tło");
+            return new CompletableFuture<>();
+        });
+        CompletableFuture<String> dashboard = scheduler.submit(HOST, RequestScheduler.Priority.VISIBLE, () -> {
+            started.add("panel");
+            return new CompletableFuture<>();
+        });
+        // Panel też zostawia ostatni slot użytkownikowi
+        assertEquals(1, scheduler.queueDepth(RequestScheduler.Priority.VISIBLE));
+        scheduler.submit(HOST, RequestScheduler.Priority.INTERACTIVE, () -> {
+            started.add("wyszukiwanie");
+            return CompletableFuture.completedFuture("ok");
+        });
+
+        slow.complete("gotowe");
+        assertEquals(List.of("wyszukiwanie", "panel"), started);
+        assertFalse(refresh.isDone());
+        dashboard.cancel(true);
+    }
+
+    @Test
+    void tokenBucketSpacesRequestsAfterBurst() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler("test-rate",
+                new RequestScheduler.Limits(20, 2, 100));
+        long start = System.nanoTime();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            int n = i;
+            results.add(scheduler.submit(HOST, RequestScheduler.Priority.INTERACTIVE,
+                    () -> CompletableFuture.completedFuture(n)));
+        }
+        for (CompletableFuture<Integer> result : results) result.get(5, TimeUnit.SECONDS);
+
+        // 2 żetony od razu, pozostałe 4 w tempie 20/s
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 180, "za szybko: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void cancellingQueuedRequestRemovesItWithoutRunning() {
+        RequestScheduler scheduler = new RequestScheduler("test-cancel",
+                new RequestScheduler.Limits(Double.POSITIVE_INFINITY, Integer.MAX_VALUE, 1));
+        CompletableFuture<String> blocking = new CompletableFuture<>();
+        scheduler.submit(HOST, RequestScheduler.Priority.INTERACTIVE, () -> blocking);
+
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<String> queued = scheduler.submit(HOST, RequestScheduler.Priority.INTERACTIVE, () -> {
+            ran.set(true);
+            return CompletableFuture.completedFuture("x");
+        });
+        assertEquals(1, scheduler.queueDepth(RequestScheduler.Priority.INTERACTIVE));
+
+        queued.cancel(true);
+        assertEquals(0, scheduler.queueDepth(RequestScheduler.Priority.INTERACTIVE));
+        blocking.complete("ok");
+        assertFalse(ran.get());
+    }
+}
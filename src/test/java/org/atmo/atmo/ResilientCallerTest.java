@@ -0,0 +1,147 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientCallerTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static ResilientCaller.Policy policy(int maxAttempts, boolean hedging, Duration openDuration) {
+        return new ResilientCaller.Policy(maxAttempts, Duration.ofMillis(1), Duration.ofMillis(5), hedging,
+                Duration.ofMillis(20), Duration.ofMillis(50), 0.2, 1.0, 3, openDuration);
+    }
+
+    @Test
+    void hedgedRequestWinsWhenFirstAttemptStalls() throws Exception {
+        ResilientCaller caller = new ResilientCaller("test", policy(1, true, Duration.ofSeconds(30)), EXECUTOR);
+        CompletableFuture<String> stalled = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = caller.call("test.hedge", true, () -> calls.getAndIncrement() == 0
+                ? stalled
+                : CompletableFuture.completedFuture("zapasowe")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("zapasowe", result);
+        assertEquals(2, calls.get());
+        assertTrue(stalled.isCancelled(), "przegrana próba powinna zostać anulowana");
+    }
+
+    @Test
+    void retriesTransientErrorsButNotClientErrors() throws Exception {
+        ResilientCaller caller = new ResilientCaller("test", policy(3, false, Duration.ofSeconds(30)), EXECUTOR);
+        AtomicInteger calls = new AtomicInteger();
+        String result = caller.call("test.retry", true, () -> calls.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new IOException("reset"))
+                : CompletableFuture.completedFuture("ok")).get(5, TimeUnit.SECONDS);
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+
+        AtomicInteger notFound = new AtomicInteger();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> caller.call("test.retry", true, () -> {
+            notFound.incrementAndGet();
+            return CompletableFuture.<String>failedFuture(new ResilientCaller.HttpStatusException(404));
+        }).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ResilientCaller.HttpStatusException.class, e.getCause());
+        assertEquals(1, notFound.get());
+    }
+
+    @Test
+    void breakerOpensAfterFailuresAndClosesAfterSuccessfulProbe() throws Exception {
+        ResilientCaller caller = new ResilientCaller("test", policy(1, false, Duration.ofMillis(100)), EXECUTOR);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ExecutionException.class, () -> caller.call("test.breaker", true, () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.<String>failedFuture(new ResilientCaller.HttpStatusException(503));
+            }).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(ResilientCaller.CircuitBreaker.State.OPEN, caller.circuitState());
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> caller.call("test.breaker", true, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("nie powinno się wykonać");
+        }).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ResilientCaller.CircuitOpenException.class, rejected.getCause());
+        assertEquals(3, calls.get());
+
+        Thread.sleep(150);
+        assertEquals("ok", caller.call("test.breaker", true, () -> CompletableFuture.completedFuture("ok")).get(5, TimeUnit.SECONDS));
+        assertEquals(ResilientCaller.CircuitBreaker.State.CLOSED, caller.circuitState());
+    }
+
+    @Test
+    void hedgingCutsTailLatencyAgainstStub() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO).withForecastDays(1).withTail(1.0, Duration.ofSeconds(5)))) {
+            ForecastCache cache = new ForecastCache(16, Duration.ZERO, Duration.ZERO, null);
+            WeatherService service = new WeatherService(cache, Gazetteer.empty(), stub.baseUrl(), stub.baseUrl(),
+                    policy(1, true, Duration.ofSeconds(30)));
+
+            // Pierwsze żądanie trafia w ogon; zanim minie opóźnienie zapasowego, upstream znów odpowiada szybko
+            long start = System.nanoTime();
+            CompletableFuture<WeatherService.WeatherData> load = service.getWeatherDataAsync("A", "50.0", "20.0");
+            Thread.sleep(10);
+            stub.setConfig(stub.getConfig().withTail(0.0, Duration.ZERO));
+
+            assertEquals("A", load.get(3, TimeUnit.SECONDS).city());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+            assertEquals(2, stub.forecastRequests());
+        }
+    }
+
+    @Test
+    void openBreakerServesLastKnownForecastFromCache() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO).withForecastDays(1))) {
+            ForecastCache cache = new ForecastCache(16, Duration.ZERO, Duration.ZERO, null);
+            WeatherService service = new WeatherService(cache, Gazetteer.empty(), stub.baseUrl(), stub.baseUrl(),
+                    policy(1, false, Duration.ofSeconds(30)));
+            WeatherService.WeatherData fresh = service.getWeatherData("A", "50.0", "20.0");
+            // TTL zero liczy się w milisekundach - w tej samej milisekundzie wpis byłby jeszcze świeży
+            Thread.sleep(5);
+
+            stub.setConfig(stub.getConfig().withErrorRate(1.0));
+            for (String city : List.of("B", "C", "D", "E", "F")) {
+                WeatherService.WeatherData cached = service.getWeatherData(city, "50.0", "20.0");
+                assertEquals(city, cached.city());
+                assertEquals(fresh.currentTemp(), cached.currentTemp());
+            }
+
+            // Po trzech błędach bezpiecznik jest otwarty i kolejne wywołania nie dochodzą do upstreamu
+            assertEquals(ResilientCaller.CircuitBreaker.State.OPEN, service.getForecastCircuitState());
+            assertEquals(4, stub.forecastRequests());
+            assertThrows(IOException.class, () -> service.getWeatherData("G", "10.0", "10.0"));
+            assertEquals(4, stub.forecastRequests());
+        }
+    }
+
+    @Test
+    void malformedResponseIsNotRetriedNorCountedAgainstBreaker() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO).withForecastDays(1).withMalformedRate(1.0))) {
+            WeatherService service = new WeatherService(new ForecastCache(16, Duration.ZERO, Duration.ZERO, null),
+                    Gazetteer.empty(), stub.baseUrl(), stub.baseUrl(), policy(3, false, Duration.ofSeconds(30)));
+
+            // Uszkodzony JSON wróciłby taki sam przy ponowieniu - jedno żądanie na wywołanie, bezpiecznik zamknięty
+            for (int i = 0; i < 5; i++) {
+                String latitude = String.valueOf(50.0 + i);
+                assertThrows(ResilientCaller.MalformedResponseException.class,
+                        () -> service.getWeatherData("A", latitude, "20.0"));
+            }
+            assertEquals(5, stub.forecastRequests());
+            assertEquals(ResilientCaller.CircuitBreaker.State.CLOSED, service.getForecastCircuitState());
+        }
+    }
+}
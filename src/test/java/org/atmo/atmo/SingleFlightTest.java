@@ -0,0 +1,179 @@
+package org.atmo.atmo;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+    private static final String GEOCODING_RESPONSE =
+            "{\"results\":[{\"name\":\"Szczecin\",\"latitude\":53.42894,\"longitude\":14.55302,\"country\":\"Polska\"}]}";
+
+    private HttpServer server;
+    private final AtomicInteger forecastRequests = new AtomicInteger();
+    private final AtomicInteger geocodingRequests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WeatherService service;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        byte[] forecast;
+        try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("forecast-szczecin.json"))) {
+            forecast = in.readAllBytes();
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/forecast", exchange -> {
+            forecastRequests.incrementAndGet();
+            await();
+            exchange.sendResponseHeaders(200, forecast.length);
+            exchange.getResponseBody().write(forecast);
+            exchange.close();
+        });
+        server.createContext("/v1/search", exchange -> {
+            geocodingRequests.incrementAndGet();
+            await();
+            byte[] body = GEOCODING_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        ForecastCache cache = new ForecastCache(16, Duration.ZERO, Duration.ZERO, null);
+        // Serwer celowo przetrzymuje żądania - zapytanie zapasowe zaburzyłoby liczenie wywołań
+        service = new WeatherService(cache, Gazetteer.empty(), baseUrl, baseUrl,
+                ResilientCaller.Policy.defaults().withHedging(false));
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentForecastRequestsShareOneHttpCall() throws Exception {
+        List<WeatherService.WeatherData> results = runConcurrently(() -> service.getWeatherData("Szczecin", "53.44", "14.56"));
+
+        assertEquals(1, forecastRequests.get());
+        assertEquals(CALLERS - 1, service.getForecastFlightStats().coalesced());
+        for (WeatherService.WeatherData data : results) {
+            assertEquals(results.get(0).hourly(), data.hourly());
+        }
+    }
+
+    @Test
+    void concurrentGeocodingRequestsShareOneHttpCall() throws Exception {
+        List<WeatherService.Coordinates> results = runConcurrently(() -> service.getCoordinatesForCity(" Szczecin"));
+
+        assertEquals(1, geocodingRequests.get());
+        assertEquals(CALLERS - 1, service.getGeocodeFlightStats().coalesced());
+        assertEquals("Szczecin (Polska)", results.get(0).locationName());
+    }
+
+    @Test
+    void abandonedFlightDoesNotBlockNextCaller() throws Exception {
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                service.getWeatherData("Szczecin", "53.44", "14.56");
+            } catch (Exception ignored) {
+            }
+        });
+        while (forecastRequests.get() == 0) Thread.sleep(5);
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertEquals(0, service.getForecastFlightStats().inFlight());
+    }
+
+    @Test
+    void callerReactingToFailureStartsNewFlight() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>("test");
+        CompletableFuture<String> call = new CompletableFuture<>();
+        // Wołający, który po błędzie od razu pyta ponownie, nie może dostać tego samego, zakończonego lotu
+        CompletableFuture<String> retried = flights.submit("k", () -> call)
+                .exceptionallyCompose(e -> flights.submit("k", () -> CompletableFuture.completedFuture("nowe")));
+        call.completeExceptionally(new IllegalStateException("503"));
+
+        assertEquals("nowe", retried.get(5, TimeUnit.SECONDS));
+        assertEquals(2, flights.stats().executions());
+        assertEquals(0, flights.stats().inFlight());
+    }
+
+    @Test
+    void joinerDoesNotWaitForLeaderToStartCall() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>("test");
+        CountDownLatch leaderInCall = new CountDownLatch(1);
+        CountDownLatch startCall = new CountDownLatch(1);
+        CompletableFuture<String> call = new CompletableFuture<>();
+        Thread leader = Thread.ofVirtual().start(() -> flights.submit("k", () -> {
+            leaderInCall.countDown();
+            try {
+                startCall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return call;
+        }));
+        assertTrue(leaderInCall.await(5, TimeUnit.SECONDS));
+
+        // Lider wciąż tworzy wywołanie, a dołączający dostaje swój future od razu
+        CompletableFuture<String> joined = flights.submit("k", () -> CompletableFuture.completedFuture("drugie"));
+        assertFalse(joined.isDone());
+        startCall.countDown();
+        leader.join(5000);
+        call.complete("wynik");
+
+        assertEquals("wynik", joined.get(5, TimeUnit.SECONDS));
+        assertEquals(1, flights.stats().executions());
+        assertEquals(1, flights.stats().coalesced());
+    }
+
+    private <T> List<T> runConcurrently(java.util.concurrent.Callable<T> call) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) futures.add(pool.submit(call));
+
+            // Serwer trzyma pierwsze żądanie, dopóki wszyscy nie dołączą
+            Thread.sleep(300);
+            release.countDown();
+
+            List<T> results = new ArrayList<>();
+            for (Future<T> f : futures) results.add(f.get(10, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void await() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
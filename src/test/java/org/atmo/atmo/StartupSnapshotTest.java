@@ -0,0 +1,48 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsCityCoordinatesForecastAndFavorites() throws Exception {
+        ForecastSeries hourly = new ForecastSeries(new long[]{1_700_000_000L, 1_700_003_600L},
+                new float[]{4.5f, 5f}, null, new float[]{0, 0.2f}, new float[]{10, 12}, new byte[]{0, 61}, 3600);
+        ForecastSeries daily = new ForecastSeries(new long[]{1_699_999_200L},
+                new float[]{8}, new float[]{1}, new float[]{2.5f}, new float[]{20}, new byte[]{3}, 3600);
+        WeatherService.WeatherData data = new WeatherService.WeatherData(
+                "Szczecin (Polska)", 4.5, WeatherCondition.CLEAR, hourly, daily);
+        WeatherService.Coordinates coords = new WeatherService.Coordinates(53.43, 14.55, "Szczecin (Polska)");
+
+        Path file = dir.resolve("state.bin");
+        new StartupSnapshot("szczecin", coords, data, List.of("Szczecin", "Gdańsk"), 42L).save(file);
+        StartupSnapshot loaded = StartupSnapshot.load(file);
+
+        assertNotNull(loaded);
+        assertEquals("szczecin", loaded.query());
+        assertEquals(coords, loaded.coordinates());
+        assertEquals(List.of("Szczecin", "Gdańsk"), loaded.favorites());
+        assertEquals(42L, loaded.savedAtMillis());
+        assertEquals(data.city(), loaded.data().city());
+        assertEquals(2, loaded.data().hourly().size());
+        assertEquals(WeatherCondition.RAIN_MODERATE, loaded.data().hourly().condition(1));
+    }
+
+    @Test
+    void missingOrCorruptFileYieldsNull() throws Exception {
+        Path file = dir.resolve("state.bin");
+        assertNull(StartupSnapshot.load(file));
+        Files.write(file, new byte[]{1, 2, 3});
+        assertNull(StartupSnapshot.load(file));
+    }
+}
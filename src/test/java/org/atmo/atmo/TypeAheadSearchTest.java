@@ -0,0 +1,56 @@
+package org.atmo.atmo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeAheadSearchTest {
+
+    @Test
+    void typingBurstSendsOneRequestForFinalText() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ofMillis(20), Duration.ZERO))) {
+            WeatherService service = new WeatherService(new ForecastCache(16, Duration.ZERO, Duration.ZERO, null),
+                    Gazetteer.empty(), stub.baseUrl(), stub.baseUrl());
+            BlockingQueue<List<WeatherService.Place>> results = new LinkedBlockingQueue<>();
+            TypeAheadSearch search = new TypeAheadSearch(service, Duration.ofMillis(100), Runnable::run, results::add);
+
+            for (String text : List.of("K", "Kr", "Kra", "Krak")) {
+                search.onInput(text);
+                Thread.sleep(20);
+            }
+            // Pierwszy znak to za mało na zapytanie - tylko pusta lista czyszcząca podpowiedzi
+            assertEquals(List.of(), results.poll(5, TimeUnit.SECONDS));
+            List<WeatherService.Place> places = results.poll(5, TimeUnit.SECONDS);
+
+            assertNotNull(places);
+            assertEquals("Krak", places.get(0).name());
+            assertEquals(1, stub.geocodingRequests());
+            assertTrue(results.isEmpty());
+        }
+    }
+
+    @Test
+    void longerPrefixIsServedFromCompleteCachedResults() throws Exception {
+        try (OpenMeteoStubServer stub = OpenMeteoStubServer.start(OpenMeteoStubServer.Config.defaults()
+                .withLatency(Duration.ZERO, Duration.ZERO))) {
+            WeatherService service = new WeatherService(new ForecastCache(16, Duration.ZERO, Duration.ZERO, null),
+                    Gazetteer.empty(), stub.baseUrl(), stub.baseUrl());
+
+            List<WeatherService.Place> all = service.searchPlacesAsync("Brzeg").get(5, TimeUnit.SECONDS);
+            assertTrue(all.size() < WeatherService.SUGGESTIONS);
+            assertEquals("Brzeg, Polska", all.get(0).label().replaceFirst(", Region \\d+", ""));
+
+            List<WeatherService.Place> narrowed = service.cachedPlaces("brzeg d");
+            assertNotNull(narrowed);
+            assertEquals(List.of("Brzeg Dolny"), narrowed.stream().map(WeatherService.Place::name).toList());
+            assertEquals(1, stub.geocodingRequests());
+        }
+    }
+}